@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("application")
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "de.professorsam.lecred"
@@ -15,6 +16,7 @@ dependencies {
     implementation("com.squareup.okhttp3:okhttp:5.2.1")
     implementation("org.json:json:20250517")
     implementation("io.javalin:javalin:6.7.0")
+    implementation("com.fasterxml.jackson.core:jackson-core:2.18.2")
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.1")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.1")
     testImplementation("org.testcontainers:junit-jupiter:1.20.2")
@@ -29,6 +31,22 @@ tasks.test {
     dependsOn("buildDockerImage")
 }
 
+jmh {
+    jmhVersion = "1.37"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    // Narrow a run with e.g. ./gradlew jmh -Pjmh.includes=StatusSerialization
+    providers.gradleProperty("jmh.includes").orNull?.let { includes = listOf(it) }
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs LecRec against synthetic lecture series offline and reports its resource use"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass = "de.professorsam.lecrec.LoadHarness"
+    systemProperties(project.properties.filterKeys { it.startsWith("load.") })
+}
+
 tasks.compileJava {
     sourceCompatibility = JavaVersion.VERSION_21.toString()
     targetCompatibility = JavaVersion.VERSION_21.toString()
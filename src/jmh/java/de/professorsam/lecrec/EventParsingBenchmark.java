@@ -0,0 +1,50 @@
+package de.professorsam.lecrec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the two API responses every recorder handles: the next-event lookup and the stream details.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventParsingBenchmark {
+    private static final String NEXT_EVENT = """
+            {"count": 1, "next": "https://example.org/api/livestream/events?limit=1&offset=1", "previous": null,
+             "results": [{"id": "0f6c3a5e-1b2d-4c8e-9a7f-3e2d1c0b9a88", "title": "Analysis I - Vorlesung 12",
+             "series": "b1e0c9d8-7a6f-4e5d-8c3b-2a1f0e9d8c7b", "start": "2026-10-19T08:15:00+02:00",
+             "end": "2026-10-19T09:45:00+02:00", "active": false, "password_protected": true,
+             "description": "Raum H1, Übertragung aus dem Hörsaal", "tags": ["mathe", "vorlesung", "ws26"]}]}
+            """;
+    private static final String STREAM_DETAILS = """
+            {"id": "0f6c3a5e-1b2d-4c8e-9a7f-3e2d1c0b9a88", "title": "Analysis I - Vorlesung 12", "active": true,
+             "start": "2026-10-19T08:15:00+02:00", "end": "2026-10-19T09:45:00+02:00",
+             "manifest": "https://stream.example.org/hls/0f6c3a5e-1b2d-4c8e-9a7f-3e2d1c0b9a88/master.m3u8",
+             "viewers": 187, "chat_enabled": false}
+            """;
+
+    @Benchmark
+    public EventPage nextEvent() throws IOException {
+        return EventPage.parse(new StringReader(NEXT_EVENT));
+    }
+
+    @Benchmark
+    public String streamDetails() {
+        return Recorder.parseManifest(new StringReader(STREAM_DETAILS));
+    }
+}
@@ -0,0 +1,61 @@
+package de.professorsam.lecrec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@code /api/recorders} payload: a status change followed by a fresh serialization
+ * ({@link #changed}) and the cached path taken by every poll between changes ({@link #unchanged}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusSerializationBenchmark {
+    @Param({"10", "100", "1000"})
+    public int recorders;
+
+    private final StatusRegistry registry = new StatusRegistry();
+    private final Instant start = Instant.parse("2026-10-19T06:15:00Z");
+    private int probes;
+
+    @Setup
+    public void setup() {
+        StreamState[] states = StreamState.values();
+        for (int i = 0; i < recorders; i++) {
+            registry.publish(status(i, states[i % states.length], 0));
+        }
+    }
+
+    @Benchmark
+    public byte[] changed() {
+        registry.publish(status(0, StreamState.RETRYING_LOADING_STREAM, ++probes));
+        return registry.snapshot().json();
+    }
+
+    @Benchmark
+    public byte[] unchanged() {
+        return registry.snapshot().json();
+    }
+
+    private RecorderStatus status(int i, StreamState state, int probeCount) {
+        String seriesID = String.format("series-%08d", i);
+        return new RecorderStatus(seriesID, state, start.plusSeconds(i * 60L), probeCount, Duration.ofSeconds(i % 90),
+                null, 0, 0, null, "https://livestream.example.org/series/" + seriesID, probeCount);
+    }
+}
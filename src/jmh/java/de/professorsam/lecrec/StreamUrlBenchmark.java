@@ -0,0 +1,41 @@
+package de.professorsam.lecrec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the configured viewer URLs into series ID and password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamUrlBenchmark {
+    @Param({
+            "https://livestream.example.org/series/b1e0c9d8-7a6f-4e5d-8c3b-2a1f0e9d8c7b",
+            "https://livestream.example.org/series/b1e0c9d8-7a6f-4e5d-8c3b-2a1f0e9d8c7b?password=s3cr3t-Pa55"
+    })
+    public String url;
+
+    @Benchmark
+    public String seriesId() {
+        return Recorder.extractSeriesId(url);
+    }
+
+    @Benchmark
+    public String password() {
+        return Recorder.extractPassword(url);
+    }
+}
@@ -0,0 +1,82 @@
+package de.professorsam.lecrec;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads a recording through {@link ChunkedUploader} to an in-process WebDAV stub that accepts every
+ * request and discards the body. {@code plain} sends one PUT, {@code nextcloud} uses chunking v2 with
+ * the configured part size and parallelism.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UploadBenchmark {
+    @Param({"256"})
+    public int sizeMb;
+
+    @Param({"plain", "nextcloud"})
+    public String layout;
+
+    private HttpServer server;
+    private File recording;
+    private ChunkedUploader uploader;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.sendResponseHeaders(201, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        recording = File.createTempFile("lecrec-bench", ".mp4");
+        try (RandomAccessFile file = new RandomAccessFile(recording, "rw")) {
+            file.setLength(sizeMb * 1024L * 1024L);
+        }
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        String endpoint = layout.equals("nextcloud") ? base + "/remote.php/dav/files/bench/" : base + "/dav/";
+        uploader = new ChunkedUploader(new WebDavTarget(endpoint, "lectures/", "bench", "bench"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        recording.delete();
+        ChunkedUploader.manifestFor(recording).delete();
+    }
+
+    @Benchmark
+    public void upload() throws IOException, InterruptedException {
+        uploader.upload(recording);
+    }
+}
@@ -0,0 +1,135 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 checksums of recordings, kept in a {@code <file>.sha256} sidecar in {@code sha256sum} format.
+ * A {@link Tail} hashes a recording while the engine appends to it, reading each block right after it
+ * was written, so the finished file does not have to be read again just to hash it.
+ */
+public final class Checksums {
+    private static final long POLL_MILLIS = 500;
+
+    private Checksums() {
+    }
+
+    public static File sidecar(File file) {
+        return new File(file.getParentFile(), file.getName() + ".sha256");
+    }
+
+    /**
+     * Returns the checksum from the sidecar, or hashes the file if the sidecar is missing or older than the file.
+     */
+    public static String sha256(File file) throws IOException {
+        File sidecar = sidecar(file);
+        if (sidecar.isFile() && sidecar.lastModified() >= file.lastModified()) {
+            String line = Files.readString(sidecar.toPath(), StandardCharsets.UTF_8).trim();
+            int space = line.indexOf(' ');
+            if (space == 64) return line.substring(0, space);
+        }
+        String hex = compute(file);
+        write(file, hex);
+        return hex;
+    }
+
+    /**
+     * Hashes the file without storing a sidecar.
+     */
+    public static String compute(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void write(File file, String hex) throws IOException {
+        Files.writeString(sidecar(file).toPath(), hex + "  " + file.getName() + "\n", StandardCharsets.UTF_8);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Follows a file that is only ever appended to and writes its sidecar once the writer is done.
+     */
+    public static final class Tail {
+        private final File file;
+        private final MessageDigest digest = newDigest();
+        private final Thread thread;
+        private volatile boolean writerDone;
+        private long position;
+        private IOException failure;
+
+        public Tail(File file) {
+            this.file = file;
+            this.thread = Thread.ofVirtual().name("checksum-" + file.getName()).start(this::follow);
+        }
+
+        private void follow() {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            try {
+                while (true) {
+                    boolean last = writerDone;
+                    if (file.exists()) {
+                        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                            int read;
+                            while ((read = channel.read(buffer, position)) > 0) {
+                                buffer.flip();
+                                digest.update(buffer);
+                                buffer.clear();
+                                position += read;
+                            }
+                        }
+                    }
+                    if (last) return;
+                    Thread.sleep(POLL_MILLIS);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                failure = new IOException("Interrupted", e);
+            }
+        }
+
+        /**
+         * Hashes what is left after the writer finished and stores the sidecar.
+         * Returns false if the file could not be followed; the checksum is then computed on demand.
+         */
+        public boolean finish() throws InterruptedException {
+            writerDone = true;
+            thread.join();
+            if (failure != null || !file.isFile() || position != file.length()) {
+                System.out.println("Could not hash " + file.getName() + " while recording"
+                        + (failure != null ? ": " + failure.getMessage() : ""));
+                return false;
+            }
+            try {
+                write(file, HexFormat.of().formatHex(digest.digest()));
+                return true;
+            } catch (IOException e) {
+                System.out.println("Could not store checksum of " + file.getName() + ": " + e.getMessage());
+                return false;
+            }
+        }
+    }
+}
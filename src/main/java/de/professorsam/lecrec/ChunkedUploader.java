@@ -0,0 +1,341 @@
+package de.professorsam.lecrec;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads recordings to WebDAV. Large files on Nextcloud are sent with the chunking v2 protocol:
+ * fixed-size parts go up concurrently, finished parts are tracked in a {@code .upload.json} manifest
+ * next to the file, and a later attempt only sends the parts that are still missing.
+ * Other servers get a single plain PUT.
+ * Every file is sent with its SHA-256 in an {@code OC-Checksum} header. Before uploading, the target is
+ * asked for its stored checksums with a PROPFIND, and files the server already holds in full are skipped.
+ */
+public class ChunkedUploader {
+    private static final long MB = 1024 * 1024;
+    private static final int PART_ATTEMPTS = 3;
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+    private static final MediaType XML = MediaType.parse("application/xml; charset=utf-8");
+    private static final String PROPFIND = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <d:propfind xmlns:d="DAV:" xmlns:oc="http://owncloud.org/ns">
+              <d:prop><d:getcontentlength/><oc:checksums/></d:prop>
+            </d:propfind>
+            """;
+    private static final Metrics.Counter skipped = Metrics.counter("lecrec_upload_skipped_total",
+            "Files not uploaded because the server already had them with the same checksum");
+
+    private final WebDavTarget target;
+    private final long chunkSize;
+    private final int parallelism;
+    private final String chunkingMode;
+
+    public ChunkedUploader(WebDavTarget target) {
+        // Nextcloud requires at least 5 MB per part except for the last one.
+        this(target, Math.max(5, Config.integer("LECREC_UPLOAD_CHUNK_MB", 64)) * MB);
+    }
+
+    ChunkedUploader(WebDavTarget target, long chunkSize) {
+        this.target = target;
+        this.chunkSize = chunkSize;
+        this.parallelism = Math.max(1, Config.integer("LECREC_UPLOAD_PARALLEL", 4));
+        this.chunkingMode = Config.string("LECREC_UPLOAD_CHUNKING", "auto").toLowerCase();
+    }
+
+    /**
+     * Uploads a recording. A directory (an HLS recording) becomes a collection of the same name;
+     * its playlists are sent after the segments they list.
+     */
+    public void upload(File file) throws IOException, InterruptedException {
+        if (!file.isDirectory()) {
+            upload(file, file.getName(), Checksums.sha256(file), remoteFiles(destinationUrl(file.getName()), "0"));
+            return;
+        }
+        execute(new Request.Builder().url(target.urlFor(file.getName() + "/")).method("MKCOL", null), 405);
+        Map<String, RemoteFile> remote = remoteFiles(destinationUrl(file.getName() + "/"), "1");
+        File[] children = file.listFiles(child -> child.isFile() && !child.getName().endsWith(".upload.json"));
+        if (children == null) throw new IOException("Cannot list " + file);
+        Arrays.sort(children, Comparator.comparing((File child) -> child.getName().endsWith(".m3u8"))
+                .thenComparing(File::getName));
+        for (File child : children) {
+            // Segments are small, so their checksums are not worth a sidecar each.
+            upload(child, file.getName() + "/" + child.getName(), Checksums.compute(child), remote);
+        }
+    }
+
+    private void upload(File file, String remoteName, String sha256, Map<String, RemoteFile> remote) throws IOException, InterruptedException {
+        String checksum = "SHA256:" + sha256;
+        RemoteFile existing = remote.get(file.getName());
+        if (existing != null && existing.length() == file.length()
+                && existing.checksums().toLowerCase().contains(checksum.toLowerCase())) {
+            System.out.println(remoteName + " is already on the server. Skipping upload");
+            skipped.inc();
+            return;
+        }
+        String uploadsUrl = chunkingMode.equals("off") ? null : nextcloudUploadsUrl();
+        if (uploadsUrl != null && file.length() > chunkSize) {
+            uploadChunked(file, remoteName, checksum, uploadsUrl);
+        } else {
+            if (chunkingMode.equals("nextcloud") && uploadsUrl == null) {
+                System.out.println("Endpoint is not a Nextcloud WebDAV URL. Using a plain PUT");
+            }
+            uploadPlain(file, remoteName, checksum);
+        }
+    }
+
+    private void uploadPlain(File file, String remoteName, String checksum) throws IOException {
+        String targetUrl = target.urlFor(remoteName);
+        System.out.println("Uploading to: " + targetUrl);
+        Request request = new Request.Builder()
+                .url(targetUrl)
+                .header("Authorization", target.authorization())
+                .header("OC-Checksum", checksum)
+                .put(Recorder.throttle.wrap(RequestBody.create(file, OCTET_STREAM)))
+                .build();
+        try (Response response = Recorder.httpclient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Upload failed: " + response.code() + " " + response.message());
+            }
+        }
+    }
+
+    private void uploadChunked(File file, String remoteName, String checksum, String uploadsUrl) throws IOException, InterruptedException {
+        String destination = destinationUrl(remoteName);
+        File manifestFile = manifestFor(file);
+        JSONObject manifest = loadManifest(manifestFile, file);
+        String uploadDir = uploadsUrl + manifest.getString("transferId");
+        int parts = (int) ((file.length() + chunkSize - 1) / chunkSize);
+        Set<Integer> completed = new TreeSet<>();
+        manifest.getJSONArray("completed").forEach(part -> completed.add(((Number) part).intValue()));
+
+        System.out.println("Chunked upload to: " + destination + " (" + completed.size() + "/" + parts + " parts already uploaded)");
+        if (completed.isEmpty()) {
+            execute(new Request.Builder()
+                    .url(uploadDir)
+                    .header("Destination", destination)
+                    .method("MKCOL", null), 405);
+        }
+
+        ExecutorService uploaders = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform().daemon().name("chunk-upload-", 0).factory());
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int part = 1; part <= parts; part++) {
+                if (completed.contains(part)) continue;
+                int number = part;
+                pending.add(uploaders.submit(() -> {
+                    uploadPart(file, uploadDir, destination, number);
+                    synchronized (manifest) {
+                        manifest.getJSONArray("completed").put(number);
+                        saveManifest(manifestFile, manifest);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MissingUploadException) {
+                System.out.println("Upload session expired on the server. Starting over");
+                Files.deleteIfExists(manifestFile.toPath());
+            }
+            throw new IOException("Chunked upload failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            uploaders.shutdownNow();
+        }
+
+        Request assemble = new Request.Builder()
+                .url(uploadDir + "/.file")
+                .header("Destination", destination)
+                .header("OC-Total-Length", String.valueOf(file.length()))
+                .header("OC-Checksum", checksum)
+                .header("Authorization", target.authorization())
+                .method("MOVE", null)
+                .build();
+        try (Response response = Recorder.httpclient.newCall(assemble).execute()) {
+            if (response.code() == 404 || response.code() == 409) {
+                // The parts are gone although the manifest lists them; retrying the MOVE would fail forever.
+                System.out.println("Upload session expired on the server before assembly. Starting over");
+                Files.deleteIfExists(manifestFile.toPath());
+                throw new MissingUploadException(uploadDir);
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("MOVE " + assemble.url() + " failed: " + response.code() + " " + response.message());
+            }
+        }
+        Files.deleteIfExists(manifestFile.toPath());
+    }
+
+    private void uploadPart(File file, String uploadDir, String destination, int number) throws IOException {
+        long offset = (number - 1) * chunkSize;
+        long length = Math.min(chunkSize, file.length() - offset);
+        String partName = String.format("%05d", number);
+        IOException last = null;
+        for (int attempt = 1; attempt <= PART_ATTEMPTS; attempt++) {
+            Request request = new Request.Builder()
+                    .url(uploadDir + "/" + partName)
+                    .header("Authorization", target.authorization())
+                    .header("Destination", destination)
+                    .header("OC-Total-Length", String.valueOf(file.length()))
+                    .put(Recorder.throttle.wrap(new FileRangeRequestBody(file, offset, length)))
+                    .build();
+            try (Response response = Recorder.httpclient.newCall(request).execute()) {
+                if (response.code() == 404) throw new MissingUploadException(uploadDir);
+                if (response.isSuccessful()) return;
+                last = new IOException("Part " + number + " failed: " + response.code() + " " + response.message());
+            } catch (MissingUploadException e) {
+                throw e;
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    private void execute(Request.Builder builder, int... acceptedCodes) throws IOException {
+        Request request = builder.header("Authorization", target.authorization()).build();
+        try (Response response = Recorder.httpclient.newCall(request).execute()) {
+            if (response.isSuccessful()) return;
+            for (int code : acceptedCodes) {
+                if (response.code() == code) return;
+            }
+            throw new IOException(request.method() + " " + request.url() + " failed: " + response.code() + " " + response.message());
+        }
+    }
+
+    private record RemoteFile(long length, String checksums) {
+    }
+
+    /**
+     * Lists the files at {@code url} (depth 0 for a file, 1 for a collection) with their size and the
+     * checksums the server stored, keyed by file name. Missing targets and servers that do not
+     * answer the PROPFIND yield an empty map, so the files are simply uploaded.
+     */
+    private Map<String, RemoteFile> remoteFiles(String url, String depth) {
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Authorization", target.authorization())
+                .header("Depth", depth)
+                .method("PROPFIND", RequestBody.create(PROPFIND, XML))
+                .build();
+        Map<String, RemoteFile> files = new HashMap<>();
+        try (Response response = Recorder.httpclient.newCall(request).execute()) {
+            if (response.code() != 207) return files;
+            try (InputStream body = response.body().byteStream()) {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(true);
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                Document document = factory.newDocumentBuilder().parse(body);
+                NodeList responses = document.getElementsByTagNameNS("DAV:", "response");
+                for (int i = 0; i < responses.getLength(); i++) {
+                    Element entry = (Element) responses.item(i);
+                    String href = text(entry, "DAV:", "href");
+                    String length = text(entry, "DAV:", "getcontentlength");
+                    if (href.isEmpty() || href.endsWith("/") || length.isEmpty()) continue;
+                    String name = URLDecoder.decode(href.substring(href.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+                    files.put(name, new RemoteFile(Long.parseLong(length), text(entry, "http://owncloud.org/ns", "checksums")));
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Could not check " + url + " on the server: " + e.getMessage());
+        }
+        return files;
+    }
+
+    private static String text(Element element, String namespace, String name) {
+        NodeList nodes = element.getElementsByTagNameNS(namespace, name);
+        return nodes.getLength() == 0 ? "" : nodes.item(0).getTextContent().trim();
+    }
+
+    /**
+     * Maps {@code .../remote.php/dav/files/<user>/} (or the legacy {@code .../remote.php/webdav/})
+     * to the matching chunking v2 uploads collection, or returns null if the endpoint is not Nextcloud.
+     */
+    private String nextcloudUploadsUrl() {
+        String endpoint = target.endpoint();
+        int files = endpoint.indexOf("/remote.php/dav/files/");
+        if (files >= 0) {
+            String user = endpoint.substring(files + "/remote.php/dav/files/".length()).split("/")[0];
+            return endpoint.substring(0, files) + "/remote.php/dav/uploads/" + user + "/";
+        }
+        int legacy = endpoint.indexOf("/remote.php/webdav/");
+        if (legacy >= 0) {
+            return endpoint.substring(0, legacy) + "/remote.php/dav/uploads/" + target.username() + "/";
+        }
+        return null;
+    }
+
+    private String destinationUrl(String filename) {
+        String url = target.urlFor(filename);
+        return url.replace("/remote.php/webdav/", "/remote.php/dav/files/" + target.username() + "/");
+    }
+
+    static File manifestFor(File file) {
+        return new File(file.getParentFile(), file.getName() + ".upload.json");
+    }
+
+    private JSONObject loadManifest(File manifestFile, File file) throws IOException {
+        if (manifestFile.exists()) {
+            try {
+                JSONObject manifest = new JSONObject(Files.readString(manifestFile.toPath()));
+                if (manifest.getLong("size") == file.length() && manifest.getLong("chunkSize") == chunkSize) {
+                    return manifest;
+                }
+                System.out.println("Upload manifest does not match " + file.getName() + ". Starting over");
+            } catch (Exception e) {
+                System.out.println("Could not read upload manifest " + manifestFile + ": " + e.getMessage());
+            }
+        }
+        JSONObject manifest = new JSONObject();
+        manifest.put("transferId", "lecrec-" + UUID.randomUUID());
+        manifest.put("size", file.length());
+        manifest.put("chunkSize", chunkSize);
+        manifest.put("completed", new JSONArray());
+        saveManifest(manifestFile, manifest);
+        return manifest;
+    }
+
+    private static void saveManifest(File manifestFile, JSONObject manifest) throws IOException {
+        Path tmp = manifestFile.toPath().resolveSibling(manifestFile.getName() + ".tmp");
+        Files.writeString(tmp, manifest.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class MissingUploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MissingUploadException(String uploadDir) {
+            super("Upload directory " + uploadDir + " no longer exists");
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Shares the series among several LecRec instances on one {@code /streams} volume, coordinated only
+ * through files in {@code /streams/.cluster}. Every instance writes a heartbeat to {@code nodes/<node>/heartbeat};
+ * instances with a recent heartbeat form a consistent-hash ring that assigns each series to one of them.
+ * Before a recorder does any work, its instance takes an exclusive lease in {@code leases/<series>.lease}
+ * and renews it with every heartbeat. When an instance dies, its leases expire and the series move
+ * to the remaining instances, which also take over its pending uploads and unfinished recordings.
+ * When a new instance joins, series move to it only after the current holder finished what it was doing.
+ * <p>
+ * Leases are never overwritten: whoever changes one first moves it aside with an atomic rename, which only one
+ * instance can do, and publishes the new lease with a hard link that fails if a lease appeared meanwhile.
+ * A lease only expires after {@code LECREC_CLUSTER_LEASE_SECONDS} without renewal, but an instance that is merely
+ * stalled (GC pause, slow volume) may still be recording when another takes over. Until the stalled instance
+ * notices at its next heartbeat or step and stops, both record the same lecture; each keeps and uploads its own file.
+ */
+public class Cluster {
+    private static final int VIRTUAL_NODES = 64;
+
+    private final String node;
+    private final Path nodesDir;
+    private final Path leasesDir;
+    private final Duration heartbeat;
+    private final Duration leaseTimeout;
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    private volatile List<String> liveNodes;
+    private volatile NavigableMap<Long, String> ring;
+    private volatile BiConsumer<String, String> onAcquire = (seriesID, previousNode) -> {
+    };
+    private volatile Consumer<String> onLost = seriesID -> {
+    };
+
+    private record Acquired(String previousNode) {
+    }
+
+    public Cluster(File streamsDir, String node, Duration heartbeat, Duration leaseTimeout) {
+        Path root = streamsDir.toPath().resolve(".cluster");
+        this.node = node;
+        this.nodesDir = root.resolve("nodes");
+        this.leasesDir = root.resolve("leases");
+        this.heartbeat = heartbeat;
+        this.leaseTimeout = leaseTimeout;
+        this.liveNodes = List.of(node);
+        this.ring = ring(liveNodes);
+    }
+
+    /**
+     * Returns null unless {@code LECREC_CLUSTER_NODE} names this instance.
+     */
+    public static Cluster fromConfig() {
+        String node = Config.string("LECREC_CLUSTER_NODE", null);
+        if (node == null) return null;
+        if (!node.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("LECREC_CLUSTER_NODE may only contain letters, digits, '.', '_' and '-': " + node);
+        }
+        Duration heartbeat = Duration.ofSeconds(Math.max(1, Config.integer("LECREC_CLUSTER_HEARTBEAT_SECONDS", 5)));
+        Duration leaseTimeout = Duration.ofSeconds(Math.max(heartbeat.toSeconds() * 3,
+                Config.integer("LECREC_CLUSTER_LEASE_SECONDS", 30)));
+        return new Cluster(Config.streamsDir(), node, heartbeat, leaseTimeout);
+    }
+
+    public String node() {
+        return node;
+    }
+
+    public Duration heartbeatInterval() {
+        return heartbeat;
+    }
+
+    /**
+     * Directory for files that belong to this instance only, such as its schedule snapshot.
+     */
+    public File nodeDir() {
+        return nodesDir.resolve(node).toFile();
+    }
+
+    /**
+     * Registers a listener that receives the series ID and the previous holder (null if the lease was free)
+     * whenever this instance takes a lease.
+     */
+    public void onAcquire(BiConsumer<String, String> listener) {
+        this.onAcquire = listener;
+    }
+
+    /**
+     * Registers a listener that receives the series ID when this instance finds that another one took its lease.
+     * The series' recording, if any, must stop.
+     */
+    public void onLost(Consumer<String> listener) {
+        this.onLost = listener;
+    }
+
+    /**
+     * Writes this instance's heartbeat, renews its leases and refreshes the ring from the other heartbeats.
+     */
+    public void heartbeat() {
+        Instant now = Instant.now();
+        try {
+            writeAtomically(nodesDir.resolve(node).resolve("heartbeat"),
+                    new JSONObject().put("node", node).put("heartbeat", now.toEpochMilli()).toString());
+        } catch (IOException e) {
+            System.out.println("Could not write cluster heartbeat: " + e.getMessage());
+        }
+        List<String> lost = new ArrayList<>();
+        synchronized (this) {
+            for (String seriesID : held) {
+                if (!renew(seriesID, now)) {
+                    held.remove(seriesID);
+                    lost.add(seriesID);
+                }
+            }
+        }
+        lost.forEach(onLost);
+
+        List<String> nodes = new ArrayList<>();
+        nodes.add(node);
+        File[] dirs = nodesDir.toFile().listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.getName().equals(node)) continue;
+                try {
+                    JSONObject beat = new JSONObject(Files.readString(dir.toPath().resolve("heartbeat"), StandardCharsets.UTF_8));
+                    if (Instant.ofEpochMilli(beat.getLong("heartbeat")).plus(leaseTimeout).isAfter(now)) {
+                        nodes.add(dir.getName());
+                    }
+                } catch (Exception ignored) {
+                    // No heartbeat yet, or it is being replaced right now
+                }
+            }
+        }
+        nodes.sort(null);
+        if (!nodes.equals(liveNodes)) {
+            System.out.println("Cluster members: " + nodes);
+            liveNodes = List.copyOf(nodes);
+            ring = ring(liveNodes);
+        }
+    }
+
+    public List<String> liveNodes() {
+        return liveNodes;
+    }
+
+    /**
+     * The instance the ring assigns the series to.
+     */
+    public String assignee(String seriesID) {
+        NavigableMap<Long, String> ring = this.ring;
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(seriesID));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    public boolean assignedHere(String seriesID) {
+        return node.equals(assignee(seriesID));
+    }
+
+    public boolean holds(String seriesID) {
+        return held.contains(seriesID);
+    }
+
+    /**
+     * Decides whether this instance may work on the series now. Takes the lease if the series is assigned here
+     * and the lease is free or expired, and gives it up if the series is assigned elsewhere.
+     * Must only be called between two steps of the series' recorder, never while it records.
+     */
+    public boolean claim(String seriesID) {
+        Acquired acquired;
+        synchronized (this) {
+            if (!assignedHere(seriesID)) {
+                if (held.remove(seriesID)) release(seriesID);
+                return false;
+            }
+            if (held.contains(seriesID)) {
+                JSONObject lease = readLease(seriesID);
+                if (lease != null && node.equals(lease.optString("node"))) return true;
+                System.out.println("Lost lease on " + seriesID + " to " + (lease == null ? "nobody" : lease.optString("node")));
+                held.remove(seriesID);
+                acquired = null;
+            } else {
+                acquired = acquire(seriesID);
+                if (acquired == null) return false;
+            }
+        }
+        if (acquired == null) {
+            onLost.accept(seriesID);
+            return false;
+        }
+        onAcquire.accept(seriesID, acquired.previousNode());
+        return true;
+    }
+
+    private Acquired acquire(String seriesID) {
+        Path file = leaseFile(seriesID);
+        JSONObject existing = readLease(seriesID);
+        String previous = null;
+        if (existing != null) {
+            previous = existing.optString("node");
+            // A lease of ours that this process does not know about is left from before a restart.
+            if (!previous.equals(node) && !expired(existing)) return null;
+            try {
+                // Only one instance can move the lease away; the others fail and try again later.
+                Path stale = moveAside(file, "stale");
+                if (stale == null) return null;
+                JSONObject moved = new JSONObject(Files.readString(stale, StandardCharsets.UTF_8));
+                if (!moved.optString("node").equals(node) && !expired(moved)) {
+                    // Renewed since it was read; put it back untouched.
+                    publish(file, stale);
+                    return null;
+                }
+                Files.delete(stale);
+            } catch (Exception e) {
+                System.out.println("Could not take over lease on " + seriesID + ": " + e.getMessage());
+                return null;
+            }
+        } else if (renewing(file)) {
+            // Not free, only moved aside for a moment by its holder.
+            return null;
+        }
+        try {
+            Files.createDirectories(leasesDir);
+            Path created = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".new");
+            Files.writeString(created, lease(Instant.now()).toString(), StandardCharsets.UTF_8);
+            if (!publish(file, created)) return null;
+        } catch (IOException e) {
+            System.out.println("Could not take lease on " + seriesID + ": " + e.getMessage());
+            return null;
+        }
+        held.add(seriesID);
+        System.out.println("Took lease on " + seriesID + (previous != null ? " from " + previous : ""));
+        return new Acquired(previous);
+    }
+
+    /**
+     * Extends the lease if it still names this instance. Returns false if another instance took it.
+     */
+    private boolean renew(String seriesID, Instant now) {
+        Path file = leaseFile(seriesID);
+        Path aside;
+        try {
+            aside = moveAside(file, "renew");
+        } catch (IOException e) {
+            // Still in place and ours; the next heartbeat tries again.
+            System.out.println("Could not renew lease on " + seriesID + ": " + e.getMessage());
+            return true;
+        }
+        if (aside == null) {
+            System.out.println("Lost lease on " + seriesID + " to nobody");
+            return false;
+        }
+        try {
+            JSONObject lease = new JSONObject(Files.readString(aside, StandardCharsets.UTF_8));
+            if (!node.equals(lease.optString("node"))) {
+                publish(file, aside);
+                System.out.println("Lost lease on " + seriesID + " to " + lease.optString("node"));
+                return false;
+            }
+            Files.writeString(aside, lease(now).toString(), StandardCharsets.UTF_8);
+            if (publish(file, aside)) return true;
+            System.out.println("Lost lease on " + seriesID + " while renewing it");
+        } catch (Exception e) {
+            System.out.println("Could not renew lease on " + seriesID + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void release(String seriesID) {
+        Path file = leaseFile(seriesID);
+        try {
+            Path aside = moveAside(file, "release");
+            if (aside != null) {
+                JSONObject lease = new JSONObject(Files.readString(aside, StandardCharsets.UTF_8));
+                if (node.equals(lease.optString("node"))) Files.delete(aside);
+                else publish(file, aside);
+            }
+            System.out.println("Handed over " + seriesID + " to " + assignee(seriesID));
+        } catch (Exception e) {
+            System.out.println("Could not release lease on " + seriesID + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Atomically renames the lease to a name only the caller knows. Returns null if there is no lease.
+     */
+    private static Path moveAside(Path lease, String purpose) throws IOException {
+        Path aside = lease.resolveSibling(lease.getFileName() + "." + UUID.randomUUID() + "." + purpose);
+        try {
+            Files.move(lease, aside, StandardCopyOption.ATOMIC_MOVE);
+            return aside;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Makes {@code source} the lease unless one exists, and removes {@code source} either way.
+     * A hard link is created atomically and never replaces an existing file, unlike a rename.
+     */
+    private static boolean publish(Path lease, Path source) throws IOException {
+        try {
+            Files.createLink(lease, source);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private boolean renewing(Path lease) {
+        String prefix = lease.getFileName() + ".";
+        File[] renewals = lease.getParent().toFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".renew"));
+        if (renewals == null) return false;
+        long recent = System.currentTimeMillis() - leaseTimeout.toMillis();
+        for (File renewal : renewals) {
+            if (renewal.lastModified() > recent) return true;
+        }
+        return false;
+    }
+
+    public JSONObject toJson() {
+        return new JSONObject()
+                .put("node", node)
+                .put("nodes", new JSONArray(liveNodes))
+                .put("leases", new JSONArray(held.stream().sorted().toList()));
+    }
+
+    private JSONObject lease(Instant now) {
+        return new JSONObject().put("node", node).put("expires", now.plus(leaseTimeout).toEpochMilli());
+    }
+
+    private static boolean expired(JSONObject lease) {
+        return lease.optLong("expires", 0) < System.currentTimeMillis();
+    }
+
+    private JSONObject readLease(String seriesID) {
+        try {
+            return new JSONObject(Files.readString(leaseFile(seriesID), StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (Exception e) {
+            // Unreadable leases, e.g. cut short by a crash, are treated as expired.
+            return new JSONObject().put("node", "").put("expires", 0);
+        }
+    }
+
+    private Path leaseFile(String seriesID) {
+        return leasesDir.resolve(seriesID.replaceAll("[^A-Za-z0-9._-]", "_") + ".lease");
+    }
+
+    private static void writeAtomically(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static NavigableMap<Long, String> ring(List<String> nodes) {
+        NavigableMap<Long, String> ring = new TreeMap<>();
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+        return ring;
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
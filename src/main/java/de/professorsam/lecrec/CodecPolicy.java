@@ -0,0 +1,96 @@
+package de.professorsam.lecrec;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a stream's audio has to be re-encoded to AAC or can be copied.
+ * The CODECS attribute of the master playlist is used when present, otherwise a short ffprobe run.
+ * Decisions are cached per series, since a series keeps its encoder setup between lectures.
+ */
+public class CodecPolicy {
+    private static final long FFPROBE_TIMEOUT_SECONDS = 20;
+
+    public enum AudioMode {
+        COPY, TRANSCODE
+    }
+
+    private final Map<String, AudioMode> decisions = new ConcurrentHashMap<>();
+
+    public AudioMode audioMode(String seriesID, String streamUrl) {
+        AudioMode cached = decisions.get(seriesID);
+        if (cached != null) return cached;
+
+        RecorderEvents events = RecorderEvents.of(seriesID);
+        AudioMode mode = fromManifest(streamUrl, events);
+        if (mode == null) mode = fromFfprobe(streamUrl, events);
+        if (mode == null) return AudioMode.TRANSCODE;
+
+        events.log(RecorderEvents.Kind.RECORDING, "Audio will be " + (mode == AudioMode.COPY ? "copied" : "transcoded to AAC"));
+        decisions.put(seriesID, mode);
+        return mode;
+    }
+
+    private AudioMode fromManifest(String streamUrl, RecorderEvents events) {
+        Request request = new Request.Builder().url(streamUrl).build();
+        try (Response response = Recorder.httpclient.newCall(request).execute()) {
+            if (!response.isSuccessful()) return null;
+            HlsPlaylist playlist = HlsPlaylist.parse(response.body().string(), HttpUrl.get(streamUrl));
+            if (!playlist.isMaster()) return null;
+            AudioMode mode = AudioMode.COPY;
+            for (HlsPlaylist.Variant variant : playlist.variants()) {
+                if (variant.codecs() == null) return null;
+                if (!audioIsAac(variant.codecs())) mode = AudioMode.TRANSCODE;
+            }
+            return mode;
+        } catch (Exception e) {
+            events.log(RecorderEvents.Kind.ERROR, "Could not inspect manifest codecs: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static boolean audioIsAac(String codecs) {
+        for (String codec : codecs.split(",")) {
+            String c = codec.trim().toLowerCase();
+            if (c.startsWith("avc") || c.startsWith("hvc") || c.startsWith("hev") || c.startsWith("av01") || c.startsWith("vp0")) {
+                continue;
+            }
+            // mp4a.40.2 (AAC-LC), .5 (HE-AAC) and .29 (HE-AACv2) are AAC. mp4a.40.34 is MP3, mp4a.a5/a6 are (E-)AC-3.
+            if (!c.equals("mp4a.40.2") && !c.equals("mp4a.40.5") && !c.equals("mp4a.40.29")) return false;
+        }
+        return true;
+    }
+
+    private AudioMode fromFfprobe(String streamUrl, RecorderEvents events) {
+        try {
+            Process p = new ProcessBuilder("ffprobe",
+                    "-v", "error",
+                    "-select_streams", "a:0",
+                    "-show_entries", "stream=codec_name",
+                    "-of", "default=noprint_wrappers=1:nokey=1",
+                    streamUrl)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!p.waitFor(FFPROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                p.destroyForcibly();
+                return null;
+            }
+            if (p.exitValue() != 0) return null;
+            String codec = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return codec.isEmpty() || codec.equals("aac") ? AudioMode.COPY : AudioMode.TRANSCODE;
+        } catch (IOException e) {
+            events.log(RecorderEvents.Kind.ERROR, "Could not run ffprobe: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
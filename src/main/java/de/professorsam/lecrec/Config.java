@@ -0,0 +1,41 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public final class Config {
+
+    private Config() {
+    }
+
+    public static String string(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int integer(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for " + name + ": " + value + ". Using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static File streamsDir() {
+        return new File(string("LECREC_STREAMS_DIR", "/streams"));
+    }
+
+    public static boolean streamingUpload() {
+        return string("LECREC_UPLOAD_MODE", "after").equalsIgnoreCase("streaming");
+    }
+
+    public static String base64(String name) {
+        String value = System.getenv(name);
+        if (value == null) return null;
+        return new String(Base64.getDecoder().decode(value.trim()), StandardCharsets.UTF_8);
+    }
+}
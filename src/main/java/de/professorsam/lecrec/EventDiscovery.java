@@ -0,0 +1,197 @@
+package de.professorsam.lecrec;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Looks up the next event of a series, shared by all recorders. Answers are cached for a TTL and
+ * revalidated with conditional requests, and concurrent lookups for the same series share one call.
+ * The events API filters by a single series, so each series costs at most one request per TTL.
+ * <p>
+ * With schedule prefetch, a lookup walks the paginated event list and keeps every upcoming event of the
+ * series in start order. Once a lecture is recorded the following one is answered from memory, so
+ * back-to-back lectures need no API call in between. The walk is only repeated when the first page changed.
+ */
+public class EventDiscovery {
+
+    private record CacheEntry(List<LectureEvent> events, Instant fetchedAt, String etag, String lastModified) {
+        CacheEntry withFetchedAt(Instant fetchedAt) {
+            return new CacheEntry(events, fetchedAt, etag, lastModified);
+        }
+    }
+
+    private static final Metrics.Histogram latency = Metrics.histogram("lecrec_api_request_seconds",
+            "Latency of livestream API calls", Metrics.LATENCY_BUCKETS, "call", "next_event");
+    private static final Metrics.Counter notModified = Metrics.counter("lecrec_discovery_not_modified_total",
+            "Event lookups answered with 304 Not Modified");
+    private static final Metrics.Counter pages = Metrics.counter("lecrec_discovery_pages_total",
+            "Event list pages fetched");
+
+    private final String apiBase;
+    private final Duration ttl;
+    private final int pageSize;
+    private final int maxPages;
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CacheEntry>> inFlight = new ConcurrentHashMap<>();
+
+    public EventDiscovery(String apiBase, Duration ttl) {
+        this(apiBase, ttl, 1, 1);
+    }
+
+    /**
+     * @param pageSize events requested per page; with 1 only the next event is looked up
+     * @param maxPages upper bound of pages walked per lookup
+     */
+    public EventDiscovery(String apiBase, Duration ttl, int pageSize, int maxPages) {
+        this.apiBase = apiBase;
+        this.ttl = ttl;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+    }
+
+    public static EventDiscovery fromConfig(String apiBase) {
+        Duration ttl = Duration.ofSeconds(Config.integer("LECREC_DISCOVERY_TTL_SECONDS", 300));
+        if (!Config.string("LECREC_DISCOVERY_MODE", "next").equalsIgnoreCase("schedule")) {
+            return new EventDiscovery(apiBase, ttl);
+        }
+        return new EventDiscovery(apiBase, ttl, Math.max(2, Config.integer("LECREC_SCHEDULE_PAGE_SIZE", 50)),
+                Math.max(1, Config.integer("LECREC_SCHEDULE_MAX_PAGES", 20)));
+    }
+
+    private boolean prefetch() {
+        return pageSize > 1;
+    }
+
+    /**
+     * Returns the next event of the series, or null if the series has no upcoming event.
+     */
+    public LectureEvent nextEvent(String seriesID) throws IOException {
+        CacheEntry cached = cache.get(seriesID);
+        if (cached != null && cached.fetchedAt().plus(ttl).isAfter(Instant.now())) {
+            return upcoming(cached);
+        }
+
+        CompletableFuture<CacheEntry> mine = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> running = inFlight.putIfAbsent(seriesID, mine);
+        if (running != null) {
+            return upcoming(await(running));
+        }
+        try {
+            CacheEntry entry = fetch(seriesID, cached);
+            cache.put(seriesID, entry);
+            mine.complete(entry);
+            return upcoming(entry);
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(seriesID, mine);
+        }
+    }
+
+    public void invalidate(String seriesID) {
+        CacheEntry cached = cache.get(seriesID);
+        if (cached != null) {
+            cache.put(seriesID, cached.withFetchedAt(Instant.EPOCH));
+        }
+    }
+
+    /**
+     * Called once an event has been recorded. Without prefetch the next lookup asks the API again;
+     * with prefetch the event is dropped from the schedule and the one after it is answered from memory.
+     */
+    public void recorded(String seriesID, String eventID) {
+        if (!prefetch()) {
+            invalidate(seriesID);
+            return;
+        }
+        cache.computeIfPresent(seriesID, (id, cached) -> new CacheEntry(
+                cached.events().stream().filter(event -> !event.id().equals(eventID)).toList(),
+                cached.fetchedAt(), cached.etag(), cached.lastModified()));
+    }
+
+    private LectureEvent upcoming(CacheEntry entry) {
+        if (!prefetch()) {
+            return entry.events().isEmpty() ? null : entry.events().getFirst();
+        }
+        Instant now = Instant.now();
+        for (LectureEvent event : entry.events()) {
+            Instant until = (event.end() != null ? event.end() : event.start()).toInstant();
+            if (!until.isBefore(now)) return event;
+        }
+        return null;
+    }
+
+    private CacheEntry fetch(String seriesID, CacheEntry cached) throws IOException {
+        HttpUrl url = HttpUrl.get(apiBase + "/api/livestream/events?limit=" + pageSize + "&series=" + seriesID);
+        Request.Builder builder = new Request.Builder().url(url);
+        if (cached != null && cached.etag() != null) builder.header("If-None-Match", cached.etag());
+        if (cached != null && cached.lastModified() != null) builder.header("If-Modified-Since", cached.lastModified());
+
+        List<LectureEvent> events = new ArrayList<>();
+        String etag;
+        String lastModified;
+        String next;
+        try (Response response = execute(builder.build())) {
+            if (response.code() == 304 && cached != null) {
+                notModified.inc();
+                return cached.withFetchedAt(Instant.now());
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Event lookup for " + seriesID + " failed: " + response.code());
+            }
+            EventPage page = EventPage.parse(response.body().charStream());
+            events.addAll(page.events());
+            etag = response.header("ETag");
+            lastModified = response.header("Last-Modified");
+            next = page.next();
+        }
+
+        for (int page = 1; prefetch() && next != null && page < maxPages; page++) {
+            HttpUrl nextUrl = url.resolve(next);
+            if (nextUrl == null) break;
+            try (Response response = execute(new Request.Builder().url(nextUrl).build())) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("Event page of " + seriesID + " failed: " + response.code());
+                }
+                EventPage eventPage = EventPage.parse(response.body().charStream());
+                events.addAll(eventPage.events());
+                next = eventPage.next();
+            }
+        }
+        if (prefetch()) events.sort(Comparator.comparing(LectureEvent::start));
+        return new CacheEntry(List.copyOf(events), Instant.now(), etag, lastModified);
+    }
+
+    private Response execute(Request request) throws IOException {
+        long started = System.nanoTime();
+        Response response = Recorder.httpclient.newCall(request).execute();
+        latency.observeNanos(System.nanoTime() - started);
+        pages.inc();
+        return response;
+    }
+
+    private static CacheEntry await(CompletableFuture<CacheEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for event lookup", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+}
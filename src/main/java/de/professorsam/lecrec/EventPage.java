@@ -0,0 +1,75 @@
+package de.professorsam.lecrec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the paginated events API. Pages are read token by token straight from the response
+ * stream; fields other than the ones a {@link LectureEvent} needs are skipped without being materialized.
+ */
+public record EventPage(List<LectureEvent> events, String next) {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public static EventPage parse(Reader body) throws IOException {
+        List<LectureEvent> events = new ArrayList<>();
+        String next = null;
+        try (JsonParser parser = JSON.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "next" -> next = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "results" -> {
+                        expect(parser, value, JsonToken.START_ARRAY);
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            events.add(readEvent(parser));
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new EventPage(events, next);
+    }
+
+    private static LectureEvent readEvent(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String id = null;
+        String title = null;
+        OffsetDateTime start = null;
+        OffsetDateTime end = null;
+        boolean active = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) continue;
+            switch (field) {
+                case "id" -> id = parser.getText();
+                case "title" -> title = parser.getText();
+                case "start" -> start = OffsetDateTime.parse(parser.getText());
+                case "end" -> end = OffsetDateTime.parse(parser.getText());
+                case "active" -> active = parser.getValueAsBoolean();
+                default -> parser.skipChildren();
+            }
+        }
+        if (id == null || start == null) {
+            throw new JsonParseException(parser, "Event without id or start");
+        }
+        return new LectureEvent(id, title, start, end, active);
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
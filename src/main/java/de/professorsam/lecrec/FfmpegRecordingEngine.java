@@ -0,0 +1,152 @@
+package de.professorsam.lecrec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records with an ffmpeg process. ffmpeg reports its progress on stdout ({@code -progress pipe:1}), which a reader
+ * thread parses and passes on. If neither the output size nor the recorded duration grows for
+ * {@code LECREC_STALL_SECONDS}, the process is considered stalled and killed; the {@link RecordingSession}
+ * then restarts capture while the event is still active.
+ */
+public class FfmpegRecordingEngine implements RecordingEngine {
+    private static final Metrics.Histogram runtime = Metrics.histogram("lecrec_ffmpeg_runtime_seconds",
+            "Runtime of ffmpeg recording processes", Metrics.DURATION_BUCKETS);
+    private static final Metrics.Counter stalls = Metrics.counter("lecrec_ffmpeg_stalls_total",
+            "ffmpeg processes killed because their output stopped growing");
+    private static final Duration KILL_GRACE = Duration.ofSeconds(5);
+    private static final Duration TRANSCODE_WAIT = Duration.ofSeconds(Math.max(0, Config.integer("LECREC_TRANSCODE_WAIT_SECONDS", 10)));
+    private static final Metrics.Counter overBudget = Metrics.counter("lecrec_transcodes_over_budget_total",
+            "Recordings that transcoded audio without a free transcode slot");
+    private final Duration stallTimeout = Duration.ofSeconds(Math.max(0, Config.integer("LECREC_STALL_SECONDS", 60)));
+    private final StorageFormat format;
+    private final ResourceGovernor governor;
+    private final CodecPolicy codecPolicy;
+
+    public FfmpegRecordingEngine(StorageFormat format, ResourceGovernor governor, CodecPolicy codecPolicy) {
+        this.format = format;
+        this.governor = governor;
+        this.codecPolicy = codecPolicy;
+    }
+
+    @Override
+    public boolean appendOnly() {
+        // +faststart moves the index to the front when ffmpeg finishes, rewriting the file.
+        return format != StorageFormat.MP4;
+    }
+
+    @Override
+    public File record(String seriesID, String streamUrl, File outdir, String basename, Listener listener) throws IOException, InterruptedException {
+        File file = new File(outdir, format == StorageFormat.HLS ? basename : basename + ".mp4");
+        if (format == StorageFormat.HLS && !file.mkdirs() && !file.isDirectory()) {
+            throw new IOException("Cannot create " + file);
+        }
+        RecorderEvents events = RecorderEvents.of(seriesID);
+        ResourceGovernor.Permit transcode = null;
+        boolean transcodeAudio = codecPolicy.audioMode(seriesID, streamUrl) == CodecPolicy.AudioMode.TRANSCODE;
+        if (transcodeAudio) {
+            // The audio codec must not depend on load: copied audio may not fit MP4, and all parts of a lecture
+            // must share one codec to be joined. A live recording cannot wait long, so it goes over budget instead.
+            transcode = governor.acquire(ResourceGovernor.Resource.TRANSCODE, seriesID, TRANSCODE_WAIT);
+            if (transcode == null) {
+                overBudget.inc();
+                events.log(RecorderEvents.Kind.FFMPEG, "Transcode budget exhausted for " + TRANSCODE_WAIT.toSeconds()
+                        + " seconds. Transcoding anyway");
+            }
+        }
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-i", streamUrl,
+                "-c:v", "copy"));
+        command.addAll(transcodeAudio ? List.of("-c:a", "aac", "-b:a", "128k") : List.of("-c:a", "copy"));
+        command.addAll(List.of(
+                "-max_reload", "0",
+                "-timeout", "5000000",
+                "-rw_timeout", "5000000",
+                "-loglevel", "warning",
+                "-nostats",
+                "-progress", "pipe:1",
+                "-stats_period", "2"));
+        if (format == StorageFormat.HLS) {
+            command.addAll(List.of(
+                    "-f", "hls",
+                    "-hls_time", "6",
+                    "-hls_list_size", "0",
+                    "-hls_playlist_type", "event",
+                    "-hls_segment_filename", new File(file, "%05d.ts").getPath(),
+                    new File(file, "index.m3u8").getPath()));
+        } else {
+            command.addAll(List.of("-movflags", format.movflags(), file.getPath()));
+        }
+        listener.output(file);
+        try {
+            long started = System.nanoTime();
+            Process p = new ProcessBuilder().command(command)
+                    .redirectInput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            AtomicLong lastGrowth = new AtomicLong(System.nanoTime());
+            Thread reader = Thread.ofVirtual().name("ffmpeg-progress-" + seriesID).start(() -> readProgress(p, listener, lastGrowth, events));
+            try {
+                while (!p.waitFor(1, TimeUnit.SECONDS)) {
+                    if (!stallTimeout.isZero() && System.nanoTime() - lastGrowth.get() > stallTimeout.toNanos()) {
+                        events.log(RecorderEvents.Kind.FFMPEG, "No progress for " + stallTimeout.toSeconds()
+                                + " seconds. Stopping ffmpeg");
+                        stalls.inc();
+                        stop(p);
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stopped from outside, e.g. because the cluster lease was lost. SIGTERM lets ffmpeg finish the file.
+                events.log(RecorderEvents.Kind.FFMPEG, "Recording interrupted. Stopping ffmpeg");
+                stop(p);
+                throw e;
+            }
+            int exitCode = p.waitFor();
+            reader.join(KILL_GRACE.toMillis());
+            runtime.observeNanos(System.nanoTime() - started);
+            events.log(RecorderEvents.Kind.FFMPEG, exitCode, "ffmpeg exited with code " + exitCode);
+            Metrics.counter("lecrec_ffmpeg_exits_total", "Exit codes of ffmpeg recording processes",
+                    "code", String.valueOf(exitCode)).inc();
+        } finally {
+            if (transcode != null) transcode.close();
+        }
+        return file;
+    }
+
+    private static void stop(Process p) throws InterruptedException {
+        p.destroy();
+        if (!p.waitFor(KILL_GRACE.toMillis(), TimeUnit.MILLISECONDS)) p.destroyForcibly();
+    }
+
+    private static void readProgress(Process p, Listener listener, AtomicLong lastGrowth, RecorderEvents events) {
+        RecordingProgress.Parser parser = new RecordingProgress.Parser();
+        long size = -1;
+        long outTime = -1;
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                RecordingProgress progress = parser.accept(line);
+                if (progress == null) continue;
+                // HLS output reports little of its size, so a growing duration counts as progress too.
+                if (progress.totalSize() > size || progress.outTime().toNanos() > outTime) {
+                    lastGrowth.set(System.nanoTime());
+                }
+                size = Math.max(size, progress.totalSize());
+                outTime = Math.max(outTime, progress.outTime().toNanos());
+                listener.progress(progress);
+            }
+        } catch (IOException e) {
+            events.log(RecorderEvents.Kind.FFMPEG, "Could not read ffmpeg progress: " + e.getMessage());
+        }
+    }
+}
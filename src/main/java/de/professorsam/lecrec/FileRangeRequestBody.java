@@ -0,0 +1,46 @@
+package de.professorsam.lecrec;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class FileRangeRequestBody extends RequestBody {
+    private final File file;
+    private final long offset;
+    private final long length;
+
+    public FileRangeRequestBody(File file, long offset, long length) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MediaType.parse("application/octet-stream");
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) throw new IOException("Unexpected end of " + file + " at " + (offset + length - remaining));
+                sink.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+}
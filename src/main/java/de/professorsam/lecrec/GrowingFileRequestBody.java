@@ -0,0 +1,80 @@
+package de.professorsam.lecrec;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Streams a file that is still being written. The body has no known length, so OkHttp sends it with
+ * chunked transfer encoding, and it only ends once {@code finished} reports true and all bytes were sent.
+ */
+public class GrowingFileRequestBody extends RequestBody {
+    private static final long POLL_MILLIS = 500;
+
+    private final File file;
+    private final BooleanSupplier finished;
+
+    public GrowingFileRequestBody(File file, BooleanSupplier finished) {
+        this.file = file;
+        this.finished = finished;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MediaType.parse("application/octet-stream");
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        while (!file.exists()) {
+            if (finished.getAsBoolean()) throw new IOException("Recording ended before " + file + " was created");
+            pause();
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (FileInputStream in = new FileInputStream(file)) {
+            while (true) {
+                int read = in.read(buffer);
+                if (read > 0) {
+                    sink.write(buffer, 0, read);
+                    continue;
+                }
+                // Check the flag before the final read, so bytes written just before finishing are not lost.
+                boolean done = finished.getAsBoolean();
+                read = in.read(buffer);
+                if (read > 0) {
+                    sink.write(buffer, 0, read);
+                } else if (done) {
+                    return;
+                } else {
+                    sink.flush();
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void pause() throws InterruptedIOException {
+        try {
+            Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Streaming upload interrupted");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package de.professorsam.lecrec;
+
+import okhttp3.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public record HlsPlaylist(List<Variant> variants,
+                          List<Segment> segments,
+                          String initSegment,
+                          long mediaSequence,
+                          double targetDuration,
+                          boolean endList,
+                          boolean encrypted,
+                          boolean separateAudio,
+                          boolean byteRanges) {
+
+    public record Variant(String uri, long bandwidth, String codecs) {
+    }
+
+    public record Segment(String uri, long sequence, double duration) {
+    }
+
+    public boolean isMaster() {
+        return !variants.isEmpty();
+    }
+
+    /**
+     * Why segments of this playlist cannot simply be concatenated, or null if they can.
+     */
+    public String unsupported() {
+        if (encrypted) return "segments are encrypted";
+        if (separateAudio) return "audio is a separate rendition";
+        if (byteRanges) return "segments are byte ranges of larger files";
+        return null;
+    }
+
+    public Variant bestVariant() {
+        Variant best = null;
+        for (Variant variant : variants) {
+            if (best == null || variant.bandwidth() > best.bandwidth()) best = variant;
+        }
+        return best;
+    }
+
+    public static HlsPlaylist parse(String content, HttpUrl base) {
+        List<Variant> variants = new ArrayList<>();
+        List<Segment> segments = new ArrayList<>();
+        String initSegment = null;
+        long mediaSequence = 0;
+        double targetDuration = 0;
+        boolean endList = false;
+        boolean encrypted = false;
+        boolean separateAudio = false;
+        boolean byteRanges = false;
+
+        Map<String, String> pendingStreamInf = null;
+        double pendingDuration = -1;
+        String[] lines = content.split("\\r?\\n");
+        if (lines.length == 0 || !lines[0].trim().startsWith("#EXTM3U")) {
+            throw new IllegalArgumentException("Not an HLS playlist");
+        }
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty()) continue;
+            if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                pendingStreamInf = attributes(line.substring("#EXT-X-STREAM-INF:".length()));
+            } else if (line.startsWith("#EXTINF:")) {
+                String value = line.substring("#EXTINF:".length());
+                int comma = value.indexOf(',');
+                pendingDuration = Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = Long.parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()));
+            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+                targetDuration = Double.parseDouble(line.substring("#EXT-X-TARGETDURATION:".length()));
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                Map<String, String> map = attributes(line.substring("#EXT-X-MAP:".length()));
+                if (map.get("URI") != null) initSegment = resolve(base, map.get("URI"));
+                if (map.containsKey("BYTERANGE")) byteRanges = true;
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                byteRanges = true;
+            } else if (line.startsWith("#EXT-X-KEY:") || line.startsWith("#EXT-X-SESSION-KEY:")) {
+                String method = attributes(line.substring(line.indexOf(':') + 1)).getOrDefault("METHOD", "NONE");
+                if (!method.equals("NONE")) encrypted = true;
+            } else if (line.startsWith("#EXT-X-MEDIA:")) {
+                Map<String, String> media = attributes(line.substring("#EXT-X-MEDIA:".length()));
+                if ("AUDIO".equals(media.get("TYPE")) && media.containsKey("URI")) separateAudio = true;
+            } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                endList = true;
+            } else if (!line.startsWith("#")) {
+                if (pendingStreamInf != null) {
+                    long bandwidth = Long.parseLong(pendingStreamInf.getOrDefault("BANDWIDTH", "0"));
+                    variants.add(new Variant(resolve(base, line), bandwidth, pendingStreamInf.get("CODECS")));
+                    pendingStreamInf = null;
+                } else if (pendingDuration >= 0) {
+                    segments.add(new Segment(resolve(base, line), mediaSequence + segments.size(), pendingDuration));
+                    pendingDuration = -1;
+                }
+            }
+        }
+        return new HlsPlaylist(variants, segments, initSegment, mediaSequence, targetDuration, endList, encrypted, separateAudio, byteRanges);
+    }
+
+    static Map<String, String> attributes(String list) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        int i = 0;
+        while (i < list.length()) {
+            int eq = list.indexOf('=', i);
+            if (eq < 0) break;
+            String key = list.substring(i, eq).trim();
+            int valueStart = eq + 1;
+            int end;
+            String value;
+            if (valueStart < list.length() && list.charAt(valueStart) == '"') {
+                int close = list.indexOf('"', valueStart + 1);
+                if (close < 0) close = list.length();
+                value = list.substring(valueStart + 1, close);
+                end = list.indexOf(',', close);
+            } else {
+                end = list.indexOf(',', valueStart);
+                value = list.substring(valueStart, end < 0 ? list.length() : end).trim();
+            }
+            attributes.put(key, value);
+            if (end < 0) break;
+            i = end + 1;
+        }
+        return attributes;
+    }
+
+    private static String resolve(HttpUrl base, String uri) {
+        if (base == null) return uri;
+        HttpUrl resolved = base.resolve(uri);
+        return resolved == null ? uri : resolved.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package de.professorsam.lecrec;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+public class HlsRecordingEngine implements RecordingEngine {
+    private static final int SEGMENT_ATTEMPTS = 3;
+    private static final double DEFAULT_TARGET_DURATION = 10;
+
+    private static final Metrics.Histogram segmentLatency = Metrics.histogram("lecrec_hls_segment_seconds",
+            "Download time of HLS media segments", Metrics.LATENCY_BUCKETS);
+    private static final Metrics.Counter droppedSegments = Metrics.counter("lecrec_hls_segments_dropped_total",
+            "HLS media segments left out of a recording because every download attempt failed");
+    private static final ExecutorService fetchers = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final int parallelism;
+    private final RecordingEngine fallback;
+
+    private record Fetch(HlsPlaylist.Segment segment, Future<byte[]> data) {
+    }
+
+    /**
+     * Streams whose segments cannot be concatenated as they are, encrypted ones or ones with separate
+     * audio renditions, are recorded with {@code fallback} instead.
+     */
+    public HlsRecordingEngine(int parallelism, RecordingEngine fallback) {
+        this.parallelism = Math.max(1, parallelism);
+        this.fallback = fallback;
+    }
+
+    @Override
+    public File record(String seriesID, String streamUrl, File outdir, String basename, Listener listener) throws IOException, InterruptedException {
+        RecorderEvents events = RecorderEvents.of(seriesID);
+        String mediaUrl = streamUrl;
+        HlsPlaylist playlist = fetchPlaylist(mediaUrl);
+        if (playlist.isMaster()) {
+            mediaUrl = playlist.bestVariant().uri();
+            if (playlist.unsupported() == null) playlist = fetchPlaylist(mediaUrl);
+        }
+        if (playlist.unsupported() != null) {
+            events.log(RecorderEvents.Kind.RECORDING, "Recording with ffmpeg because " + playlist.unsupported());
+            return fallback.record(seriesID, streamUrl, outdir, basename, listener);
+        }
+
+        File file = new File(outdir, basename + (playlist.initSegment() != null ? ".mp4" : ".ts"));
+        listener.output(file);
+        Semaphore permits = new Semaphore(parallelism, true);
+        // Segments are written in order; at most parallelism of them are downloaded ahead of the file.
+        ArrayDeque<Fetch> pending = new ArrayDeque<>();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            if (playlist.initSegment() != null) {
+                out.write(fetch(playlist.initSegment()));
+            }
+            long nextSequence = Long.MIN_VALUE;
+            Instant lastProgress = Instant.now();
+            while (true) {
+                boolean added = false;
+                for (HlsPlaylist.Segment segment : playlist.segments()) {
+                    if (segment.sequence() < nextSequence) continue;
+                    if (pending.size() >= parallelism) writeNext(pending, out, events);
+                    pending.add(new Fetch(segment, fetchers.submit(() -> fetchSegment(segment, permits))));
+                    nextSequence = segment.sequence() + 1;
+                    added = true;
+                }
+                while (!pending.isEmpty()) writeNext(pending, out, events);
+                out.flush();
+                if (added) lastProgress = Instant.now();
+
+                if (playlist.endList()) break;
+                double targetDuration = playlist.targetDuration() > 0 ? playlist.targetDuration() : DEFAULT_TARGET_DURATION;
+                Duration staleTimeout = Duration.ofMillis((long) Math.max(30_000, targetDuration * 6_000));
+                if (Duration.between(lastProgress, Instant.now()).compareTo(staleTimeout) > 0) {
+                    events.log(RecorderEvents.Kind.RECORDING, "No new segments for " + staleTimeout.toSeconds() + " seconds. Stream ended");
+                    break;
+                }
+                Thread.sleep((long) (targetDuration * (added ? 1000 : 500)));
+                try {
+                    playlist = fetchPlaylist(mediaUrl);
+                } catch (IOException | IllegalArgumentException e) {
+                    events.log(RecorderEvents.Kind.RECORDING, "Could not reload playlist: " + e.getMessage());
+                }
+                if (playlist.unsupported() != null) {
+                    // Ends this part; the session restarts into a new one, which the fallback records.
+                    events.log(RecorderEvents.Kind.RECORDING, "Ending part because " + playlist.unsupported());
+                    break;
+                }
+            }
+        } finally {
+            pending.forEach(fetch -> fetch.data().cancel(true));
+        }
+        return file;
+    }
+
+    private void writeNext(ArrayDeque<Fetch> pending, OutputStream out, RecorderEvents events) throws IOException, InterruptedException {
+        Fetch next = pending.removeFirst();
+        try {
+            out.write(next.data().get());
+        } catch (ExecutionException e) {
+            droppedSegments.inc();
+            events.log(RecorderEvents.Kind.ERROR, "Segment " + next.segment().sequence() + " dropped, the recording misses "
+                    + next.segment().duration() + " seconds: " + e.getCause().getMessage());
+        }
+    }
+
+    private byte[] fetchSegment(HlsPlaylist.Segment segment, Semaphore permits) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            IOException last = null;
+            for (int attempt = 1; attempt <= SEGMENT_ATTEMPTS; attempt++) {
+                try {
+                    long started = System.nanoTime();
+                    byte[] data = fetch(segment.uri());
+                    segmentLatency.observeNanos(System.nanoTime() - started);
+                    return data;
+                } catch (IOException e) {
+                    last = e;
+                }
+            }
+            throw last;
+        } finally {
+            permits.release();
+        }
+    }
+
+    private HlsPlaylist fetchPlaylist(String url) throws IOException {
+        return HlsPlaylist.parse(new String(fetch(url), StandardCharsets.UTF_8), HttpUrl.get(url));
+    }
+
+    private byte[] fetch(String url) throws IOException {
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = Recorder.httpclient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("GET " + url + " returned " + response.code());
+            }
+            return response.body().bytes();
+        }
+    }
+}
@@ -1,46 +1,209 @@
 package de.professorsam.lecrec;
 
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.UnauthorizedResponse;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class LecRec {
 
-    private static final List<Recorder> recorders = new ArrayList<>();
+    private static final StatusRegistry registry = new StatusRegistry();
+    private static final RecorderScheduler scheduler = new RecorderScheduler();
+    private static final RecorderUpdates updates = new RecorderUpdates();
+    private static final Duration SNAPSHOT_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration METRICS_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration RESTORE_SPREAD = Duration.ofMinutes(1);
+    private static final Duration ADOPT_QUIET = Duration.ofSeconds(10);
+
+    /**
+     * Spreads the API checks of restored recorders over the first minute after startup,
+     * but always checks before the restored event is due.
+     */
+    private static Duration restoreDelay(ScheduleSnapshot.Entry entry) {
+        long untilStart = Duration.between(Instant.now(), entry.nextStreamStart()).toMillis();
+        long window = Math.min(RESTORE_SPREAD.toMillis(), untilStart / 2);
+        return window <= 0 ? Duration.ZERO : Duration.ofMillis(ThreadLocalRandom.current().nextLong(window));
+    }
+
+    /**
+     * Mutating endpoints and the recordings require {@code Authorization: Bearer <LECREC_ADMIN_TOKEN>}.
+     * Without a token they are refused, unless {@code LECREC_ADMIN_OPEN=true} explicitly opens them to everyone.
+     */
+    private static void requireAdmin(Context ctx) {
+        String token = Config.string("LECREC_ADMIN_TOKEN", null);
+        if (token == null) {
+            if (Config.string("LECREC_ADMIN_OPEN", "false").equalsIgnoreCase("true")) return;
+            throw new ForbiddenResponse("Set LECREC_ADMIN_TOKEN to use this endpoint");
+        }
+        String header = ctx.header("Authorization");
+        byte[] expected = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        if (header == null || !MessageDigest.isEqual(expected, header.getBytes(StandardCharsets.UTF_8))) {
+            throw new UnauthorizedResponse();
+        }
+    }
+
+    private static RecorderEvents.Kind eventKind(String kind) {
+        if (kind == null) return null;
+        for (RecorderEvents.Kind candidate : RecorderEvents.Kind.values()) {
+            if (candidate.name().equalsIgnoreCase(kind)) return candidate;
+        }
+        throw new BadRequestResponse("Unknown event kind " + kind + ", expected one of "
+                + Arrays.toString(RecorderEvents.Kind.values()));
+    }
 
     public static void main(String[] args) {
-        byte[] decoded = Base64.getDecoder().decode(System.getenv("LECREC_URLS"));
-        String urls = new String(decoded, StandardCharsets.UTF_8);
-        String[] urlArray = urls.split(",");
-        for(String url : urlArray){
-            Recorder recorder = new Recorder(url);
-            recorders.add(recorder);
-            recorder.start();
+        String env = System.getenv("LECREC_URLS");
+        List<String> configured = env == null ? List.of()
+                : Arrays.asList(new String(Base64.getDecoder().decode(env.trim()), StandardCharsets.UTF_8).split(","));
+        Cluster cluster = Recorder.cluster;
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(cluster != null ? cluster.nodeDir() : Config.streamsDir());
+        if (cluster != null) {
+            System.out.println("Cluster mode as " + cluster.node());
+            cluster.heartbeat();
+            // Orphaned recordings are picked up by whichever instance takes over their series.
+            if (WebDavTarget.fromEnv() != null) {
+                Recorder.uploads.resume();
+                // A recording that changed recently may still be written by a stalled previous holder.
+                Duration quiet = cluster.heartbeatInterval().multipliedBy(2).compareTo(ADOPT_QUIET) > 0
+                        ? cluster.heartbeatInterval().multipliedBy(2) : ADOPT_QUIET;
+                cluster.onAcquire((seriesID, previous) -> Recorder.uploads.adopt(previous, seriesID, quiet));
+            }
+        } else if (WebDavTarget.fromEnv() != null) {
+            Recorder.uploads.recover();
         }
+        Map<String, ScheduleSnapshot.Entry> known = snapshot.load();
+        RecorderSet recorders = new RecorderSet(Config.streamsDir(), scheduler, registry, recorder -> {
+            ScheduleSnapshot.Entry entry = known.remove(recorder.getSeriesID());
+            if (entry != null && recorder.restore(entry)) {
+                scheduler.schedule(recorder, restoreDelay(entry));
+            } else {
+                scheduler.schedule(recorder);
+            }
+        });
+        recorders.startAll(recorders.storedUrls(configured));
+        if (cluster != null) {
+            cluster.onLost(seriesID -> recorders.get(seriesID)
+                    .ifPresent(recorder -> recorder.stopRecording("another instance took over the series")));
+        }
+        Recorder.uploads.onChange(seriesID -> recorders.get(seriesID)
+                .ifPresent(recorder -> registry.publish(recorder.status())));
+        registry.onChange((previous, current) -> {
+            Recorder.throttle.setRecording(registry.snapshot().statuses().values().stream()
+                    .anyMatch(status -> status.streamState() == StreamState.RECORDING_STREAM));
+            if (current == null) {
+                updates.removed(previous.seriesID());
+            } else if (previous == null || previous.streamState() != current.streamState()
+                    || previous.pendingUploads() != current.pendingUploads()
+                    || !Objects.equals(previous.progress(), current.progress())
+                    || !Objects.equals(previous.nextStreamStart(), current.nextStreamStart())) {
+                updates.publish(current.seriesID(), current.toJson().toString());
+            }
+        });
+        scheduler.scheduleAtFixedRate(() -> snapshot.save(recorders.recorders()), SNAPSHOT_INTERVAL);
+        scheduler.scheduleAtFixedRate(() -> recorders.recorders().forEach(Recorder::sampleMetrics), METRICS_INTERVAL);
+        scheduler.scheduleAtFixedRate(updates::heartbeat, HEARTBEAT_INTERVAL);
+        if (cluster != null) {
+            scheduler.scheduleAtFixedRate(() -> {
+                cluster.heartbeat();
+                recorders.sync();
+                // Series that moved to another instance are handed over at the holder's next step.
+                recorders.recorders().stream()
+                        .filter(recorder -> cluster.holds(recorder.getSeriesID()) && !cluster.assignedHere(recorder.getSeriesID()))
+                        .forEach(scheduler::wake);
+            }, cluster.heartbeatInterval());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> snapshot.save(recorders.recorders())));
+        RecordingFiles files = new RecordingFiles(Config.streamsDir());
         var app = Javalin.create()
                 .get("/", ctx -> ctx.html(html))
+                .get("/metrics", ctx -> ctx.contentType("text/plain; version=0.0.4; charset=utf-8").result(Metrics.render()))
+                .sse("/api/recorders/stream", updates::register)
+                .get("/api/uploads", ctx -> ctx.contentType("application/json").result(Recorder.throttle.toJson().toString()))
+                .get("/streams", ctx -> {
+                    requireAdmin(ctx);
+                    files.list(ctx, "");
+                })
+                .get("/streams/<path>", ctx -> {
+                    requireAdmin(ctx);
+                    files.serve(ctx, ctx.pathParam("path"));
+                })
+                .head("/streams/<path>", ctx -> {
+                    requireAdmin(ctx);
+                    files.serve(ctx, ctx.pathParam("path"));
+                })
+                .get("/api/cluster", ctx -> ctx.contentType("application/json")
+                        .result(cluster != null ? cluster.toJson().toString() : "{\"node\":null}"))
                 .get("/api/recorders", ctx -> {
-                    try {
-                        JSONArray root = new JSONArray();
-                        recorders.forEach(recorder -> {
-                            JSONObject rec = new JSONObject();
-                            rec.put("seriesID", recorder.getSeriesID());
-                            rec.put("streamState", recorder.getStreamState());
-                            rec.put("nextStreamStart", recorder.getNextStreamStart() != null ? recorder.getNextStreamStart().toString() : Instant.now().minusSeconds(5).toString());
-                            rec.put("streamurl", System.getenv("LECREC_API_BASE") == null ? "https://dash.uni.electures.uni-muenster.de" : System.getenv("LECREC_API_BASE") + "/livestream/embed_viewer/series/" + recorder.getSeriesID());
-                            root.put(rec);
-                        });
-                        ctx.json(root.toString());
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                    StatusRegistry.Snapshot status = registry.snapshot();
+                    ctx.header("ETag", status.etag());
+                    if (status.etag().equals(ctx.header("If-None-Match"))) {
+                        ctx.status(304);
+                        return;
                     }
+                    ctx.contentType("application/json").result(status.json());
                 })
+                .post("/api/recorders", ctx -> {
+                    requireAdmin(ctx);
+                    String url = new JSONObject(ctx.body()).optString("url", null);
+                    if (!recorders.add(url)) {
+                        ctx.status(409).result("Recorder for " + Recorder.extractSeriesId(url.trim()) + " already exists");
+                        return;
+                    }
+                    Recorder added = recorders.get(Recorder.extractSeriesId(url.trim())).orElseThrow();
+                    ctx.status(201).contentType("application/json").result(added.status().toJson().toString());
+                })
+                .post("/api/recorders/reload", ctx -> {
+                    requireAdmin(ctx);
+                    List<String> urls = new ArrayList<>();
+                    new JSONObject(ctx.body()).getJSONArray("urls").forEach(url -> urls.add(String.valueOf(url)));
+                    RecorderSet.Diff diff = recorders.reload(urls);
+                    ctx.contentType("application/json").result(new JSONObject()
+                            .put("added", new JSONArray(diff.added()))
+                            .put("removed", new JSONArray(diff.removed()))
+                            .put("pending", new JSONArray(diff.pending())).toString());
+                })
+                .get("/api/recorders/{seriesID}/events", ctx -> {
+                    requireAdmin(ctx);
+                    RecorderEvents events = RecorderEvents.find(ctx.pathParam("seriesID"));
+                    if (events == null) {
+                        ctx.status(404).result("No recorder for " + ctx.pathParam("seriesID"));
+                        return;
+                    }
+                    int limit = ctx.queryParamAsClass("limit", Integer.class).getOrDefault(100);
+                    if (limit < 0) throw new BadRequestResponse("limit must not be negative");
+                    ctx.contentType("application/json").result(events.toJson(
+                            ctx.queryParamAsClass("after", Long.class).getOrDefault(-1L),
+                            eventKind(ctx.queryParam("kind")), limit).toString());
+                })
+                .delete("/api/recorders/{seriesID}", ctx -> {
+                    requireAdmin(ctx);
+                    String seriesID = ctx.pathParam("seriesID");
+                    if (!recorders.remove(seriesID)) {
+                        ctx.status(404).result("No recorder for " + seriesID);
+                        return;
+                    }
+                    // Still present while it finishes a recording in progress.
+                    ctx.status(recorders.get(seriesID).isPresent() ? 202 : 204);
+                })
+                .exception(IllegalArgumentException.class, (e, ctx) -> ctx.status(400).result(e.getMessage()))
+                .exception(JSONException.class, (e, ctx) -> ctx.status(400).result("Invalid JSON: " + e.getMessage()))
                 .start(8000);
     }
 
@@ -360,6 +523,13 @@ public class LecRec {
                     explain: "Scheduled — waiting for the event start. Countdown shown when available.",
                     progress: 30
                   },
+                  "RETRYING_LOADING_STREAM": {
+                    pillClass: "state-wait",
+                    dotColor: "#38bdf8",
+                    text: "Probing",
+                    explain: "Event is due — polling until the stream goes live.",
+                    progress: 60
+                  },
                   "RECORDING_STREAM": {
                     pillClass: "state-record",
                     dotColor: "#ff6b6b",
@@ -373,6 +543,13 @@ public class LecRec {
                     text: "Uploading",
                     explain: "Uploading finished recording to /streams or remote storage.",
                     progress: 80
+                  },
+                  "STANDBY": {
+                    pillClass: "state-search",
+                    dotColor: "#64748b",
+                    text: "Standby",
+                    explain: "Another LecRec instance in the cluster handles this series.",
+                    progress: 0
                   }
                 };
             
@@ -412,7 +589,7 @@ public class LecRec {
                 async function fetchRecorders(){
             
                   try {
-                    const resp = await fetch('/api/recorders', {cache: "no-store"});
+                    const resp = await fetch('/api/recorders', {cache: "no-cache"});
                     if(!resp.ok) throw new Error('no /api/recorders');
                     const data = await resp.json();
                     return data;
@@ -527,17 +704,42 @@ public class LecRec {
                   }
                 }
             
+                function applyUpdate(update){
+                  const next = lastData.filter(r => r.seriesID !== update.seriesID);
+                  const idx = lastData.findIndex(r => r.seriesID === update.seriesID);
+                  next.splice(idx >= 0 ? idx : next.length, 0, update);
+                  render(next);
+                }
+            
+                // live updates: the server pushes a recorder whenever its state or next start changes
+                function connect(){
+                  if(!window.EventSource) return false;
+                  const events = new EventSource('/api/recorders/stream');
+                  events.addEventListener('recorder', e => {
+                    if(auto) applyUpdate(JSON.parse(e.data));
+                  });
+                  events.addEventListener('removed', e => {
+                    if(auto) render(lastData.filter(r => r.seriesID !== e.data));
+                  });
+                  // (re)connected: load the full list once, deltas follow
+                  events.onopen = () => refresh();
+                  return true;
+                }
+            
                 refreshBtn.addEventListener('click', () => refresh());
                 toggleAuto.addEventListener('click', () => {
                   auto = !auto;
                   autoState.textContent = auto ? 'ON' : 'OFF';
+                  if(auto) refresh();
                 });
             
-                // auto refresh loop
-                (function autoLoop(){
-                  if(auto) refresh();
-                  setTimeout(autoLoop, 5000);
-                })();
+                // polling fallback for browsers without EventSource
+                if(!connect()){
+                  (function autoLoop(){
+                    if(auto) refresh();
+                    setTimeout(autoLoop, 5000);
+                  })();
+                }
             
                 // initial
                 refresh();
@@ -0,0 +1,6 @@
+package de.professorsam.lecrec;
+
+import java.time.OffsetDateTime;
+
+public record LectureEvent(String id, String title, OffsetDateTime start, OffsetDateTime end, boolean active) {
+}
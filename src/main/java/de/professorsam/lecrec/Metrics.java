@@ -0,0 +1,140 @@
+package de.professorsam.lecrec;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal metrics registry rendered in the Prometheus text format on {@code /metrics}.
+ * Counters and histogram buckets are striped adders, so hot paths never contend on a lock.
+ * Look up a labelled child once and keep it, instead of resolving it on every update.
+ */
+public final class Metrics {
+    public static final double[] LATENCY_BUCKETS = {0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    public static final double[] DURATION_BUCKETS = {1, 10, 60, 300, 900, 1800, 3600, 7200, 10800, 14400};
+    public static final double[] DELAY_BUCKETS = {1, 2, 5, 10, 20, 30, 60, 120, 300, 900};
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static final class Counter {
+        private final DoubleAdder value = new DoubleAdder();
+
+        public void inc() {
+            value.add(1);
+        }
+
+        public void add(double amount) {
+            value.add(amount);
+        }
+    }
+
+    public static final class Histogram {
+        private final double[] buckets;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram(double[] buckets) {
+            this.buckets = buckets;
+            this.counts = new LongAdder[buckets.length + 1];
+            for (int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+        }
+
+        public void observe(double value) {
+            int i = 0;
+            while (i < buckets.length && value > buckets[i]) i++;
+            counts[i].increment();
+            sum.add(value);
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+    }
+
+    private record Family(String name, String help, String type, double[] buckets, Map<String, Object> children) {
+    }
+
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) child(name, help, "counter", null, labels);
+    }
+
+    public static Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) child(name, help, "histogram", buckets, labels);
+    }
+
+    private static Object child(String name, String help, String type, double[] buckets, String... labels) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type, buckets, new ConcurrentSkipListMap<>()));
+        return family.children().computeIfAbsent(labelString(labels),
+                l -> family.type().equals("counter") ? new Counter() : new Histogram(family.buckets()));
+    }
+
+    /**
+     * Drops the children of every family whose labels include all of {@code labels}, e.g. everything
+     * labelled with a deleted series, so {@code /metrics} stops exporting them. Children still held
+     * elsewhere keep counting but are no longer rendered.
+     */
+    public static void remove(String... labels) {
+        String[] pairs = labelString(labels).split("(?<=\"),");
+        for (Family family : families.values()) {
+            family.children().keySet().removeIf(child -> {
+                List<String> childPairs = Arrays.asList(child.split("(?<=\"),"));
+                return childPairs.containsAll(Arrays.asList(pairs));
+            });
+        }
+    }
+
+    private static String labelString(String... labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name/value pairs");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!builder.isEmpty()) builder.append(',');
+            builder.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return builder.toString();
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+            family.children().forEach((labels, child) -> {
+                if (child instanceof Counter counter) {
+                    sample(out, family.name(), labels, null, counter.value.sum());
+                } else if (child instanceof Histogram histogram) {
+                    long cumulative = 0;
+                    for (int i = 0; i < histogram.counts.length; i++) {
+                        cumulative += histogram.counts[i].sum();
+                        String le = i < histogram.buckets.length ? format(histogram.buckets[i]) : "+Inf";
+                        sample(out, family.name() + "_bucket", labels, "le=\"" + le + "\"", cumulative);
+                    }
+                    sample(out, family.name() + "_sum", labels, null, histogram.sum.sum());
+                    sample(out, family.name() + "_count", labels, null, cumulative);
+                }
+            });
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extra, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null) out.append(labels.isEmpty() ? "" : ",").append(extra);
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -1,221 +1,471 @@
 package de.professorsam.lecrec;
 
 import okhttp3.*;
-import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.io.Reader;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.OffsetDateTime;
-import java.util.Base64;
-
-public class Recorder extends Thread {
-    private static final OkHttpClient httpclient = new OkHttpClient();
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * State machine for one lecture series. {@link RecorderScheduler} calls {@link #step()} whenever the
+ * recorder is due; each step performs the work of the current {@link StreamState} and returns how long
+ * to wait before the next step instead of sleeping on its own thread.
+ */
+public class Recorder {
+    static final OkHttpClient httpclient = new OkHttpClient();
+    static final UploadThrottle throttle = UploadThrottle.fromConfig();
+    static final Cluster cluster = Cluster.fromConfig();
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(15);
+    private static final Duration PROBE_LEAD = Duration.ofSeconds(Config.integer("LECREC_PROBE_LEAD_SECONDS", 60));
+    private static final Duration PROBE_INITIAL_DELAY = Duration.ofSeconds(2);
+    private static final Duration PROBE_MAX_DELAY = Duration.ofSeconds(Config.integer("LECREC_PROBE_MAX_SECONDS", 15));
+    private static final Duration PROBE_GIVE_UP = Duration.ofMinutes(Config.integer("LECREC_PROBE_GIVE_UP_MINUTES", 60));
+    private static final Metrics.Histogram streamUrlLatency = Metrics.histogram("lecrec_api_request_seconds",
+            "Latency of livestream API calls", Metrics.LATENCY_BUCKETS, "call", "stream_url");
+    private static final Metrics.Histogram detectionDelay = Metrics.histogram("lecrec_start_detection_delay_seconds",
+            "Time between scheduled start and detecting the live stream", Metrics.DELAY_BUCKETS);
+    private static final Metrics.Counter probes = Metrics.counter("lecrec_stream_probes_total", "Polls for a stream to become active");
+    private static final Metrics.Counter uploadsSucceeded = Metrics.counter("lecrec_uploads_total", "Finished upload attempts", "result", "success");
+    private static final Duration MAX_RESTORE_AGE = Duration.ofHours(3);
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(10);
+    static final ResourceGovernor governor = ResourceGovernor.fromConfig();
+    static final UploadQueue uploads = UploadQueue.fromConfig(governor);
+    private static final RecordingEngine engine = RecordingEngine.fromConfig(governor);
     private static final String apiBase = System.getenv().getOrDefault(
             "LECREC_API_BASE",
             "https://dash.uni.electures.uni-muenster.de"
     );
+    private static final String viewerBase = System.getenv("LECREC_API_BASE") == null
+            ? "https://dash.uni.electures.uni-muenster.de"
+            : System.getenv("LECREC_API_BASE") + "/livestream/embed_viewer/series/";
+    private static final EventDiscovery discovery = EventDiscovery.fromConfig(apiBase);
 
     private final String streamurl;
     private final String seriesID;
     private final String password;
+    private final RecorderEvents events;
 
     private String eventID;
-    private JSONObject nextEventJson;
     private JSONObject currentStreamJson;
-    private Instant nextStreamStart;
-    private StreamState streamState = StreamState.SEARCH_NEXT_EVENT;
+    private volatile Instant nextStreamStart;
+    private volatile Instant nextStreamEnd;
+    private volatile int probeCount;
+    private volatile Duration lastDetectionDelay;
+    private volatile StreamState streamState = StreamState.SEARCH_NEXT_EVENT;
+    private volatile boolean restored;
+    private volatile boolean retired;
+    private volatile Consumer<Recorder> listener = recorder -> {
+    };
+    private long stateSince = System.nanoTime();
+    private volatile File recordingFile;
+    private volatile RecordingProgress progress;
+    private long progressPublished = System.nanoTime() - PROGRESS_INTERVAL.toNanos();
+    private Thread recordingThread;
+    private long recordedBytesSeen;
+    private final AtomicLong statusVersion = new AtomicLong();
+
+    private final Map<StreamState, Metrics.Counter> stateSeconds = new EnumMap<>(StreamState.class);
+    private final Metrics.Counter recordedBytes;
+    private final Metrics.Counter uploadedBytes;
 
     public Recorder(String streamurl) {
-        super();
         this.streamurl = streamurl;
-        this.seriesID = extractSeriesId();
-        this.password = extractPassword();
+        this.seriesID = extractSeriesId(streamurl);
+        this.password = extractPassword(streamurl);
+        this.events = RecorderEvents.register(seriesID);
+        for (StreamState state : StreamState.values()) {
+            stateSeconds.put(state, Metrics.counter("lecrec_state_seconds_total", "Time recorders spent in each state",
+                    "series", seriesID, "state", state.name()));
+        }
+        recordedBytes = Metrics.counter("lecrec_recorded_bytes_total", "Bytes written to recordings", "series", seriesID);
+        uploadedBytes = Metrics.counter("lecrec_uploaded_bytes_total", "Bytes of recordings uploaded", "series", seriesID);
         System.out.println("Password: " + seriesID + " " + password);
     }
 
-    @Override
-    public void run() {
-        System.out.println("Starting Recorder main loop...");
-        while (true) {
-            try {
-                switch (streamState) {
-                    case SEARCH_NEXT_EVENT -> searchNextEvent();
-                    case WAITING_FOR_STREAM -> waitForStream();
-                    case RECORDING_STREAM -> recordStream();
-                    case UPLOADING_STREAM -> uploadStream();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.out.println("Unexpected error. Retrying in 15 minutes...");
-                sleepMinutes(15);
-                streamState = StreamState.SEARCH_NEXT_EVENT;
-            }
+    public void onChange(Consumer<Recorder> listener) {
+        this.listener = listener;
+    }
+
+    private void changed() {
+        listener.accept(this);
+    }
+
+    private void setState(StreamState state) {
+        accrueStateTime();
+        StreamState previous = streamState;
+        streamState = state;
+        if (previous != state) {
+            events.log(RecorderEvents.Kind.STATE, previous + " -> " + state);
+            changed();
         }
     }
 
-    private void searchNextEvent() {
-        eventID = getNextEventId(seriesID);
-        if (eventID == null) {
-            System.out.println("No upcoming event found. Retrying in 15 minutes...");
-            sleepMinutes(15);
-            return;
+    private void setNextEvent(LectureEvent event) {
+        Instant previous = nextStreamStart;
+        eventID = event.id();
+        nextStreamStart = event.start().toInstant();
+        nextStreamEnd = event.end() != null ? event.end().toInstant() : null;
+        if (!nextStreamStart.equals(previous)) changed();
+    }
+
+    private synchronized void accrueStateTime() {
+        long now = System.nanoTime();
+        stateSeconds.get(streamState).add((now - stateSince) / 1e9);
+        stateSince = now;
+    }
+
+    /**
+     * Called periodically to keep time-in-state and recorded bytes current while a state lasts for hours.
+     */
+    public void sampleMetrics() {
+        accrueStateTime();
+        sampleRecordedBytes();
+    }
+
+    private synchronized void sampleRecordedBytes() {
+        File file = recordingFile;
+        if (file == null) return;
+        long length = StorageFormat.size(file);
+        if (length > recordedBytesSeen) {
+            recordedBytes.add(length - recordedBytesSeen);
+            recordedBytesSeen = length;
         }
+    }
+
+    private synchronized void trackRecording(File file) {
+        recordingFile = file;
+        recordedBytesSeen = 0;
+    }
+
+    /**
+     * Resumes from a schedule snapshot taken before a restart. Only events that may still be live are taken over;
+     * the first step checks them against the API again.
+     */
+    public boolean restore(ScheduleSnapshot.Entry entry) {
+        if (entry.streamState() == StreamState.SEARCH_NEXT_EVENT || entry.streamState() == StreamState.UPLOADING_STREAM
+                || entry.streamState() == StreamState.STANDBY) {
+            return false;
+        }
+        if (entry.nextStreamStart().isBefore(Instant.now().minus(MAX_RESTORE_AGE))) {
+            return false;
+        }
+        eventID = entry.eventID();
+        nextStreamStart = entry.nextStreamStart();
+        nextStreamEnd = null;
+        setState(StreamState.WAITING_FOR_STREAM);
+        restored = true;
+        events.log(RecorderEvents.Kind.INFO, "Restored from snapshot. Next stream at " + nextStreamStart);
+        return true;
+    }
 
+    public ScheduleSnapshot.Entry snapshotEntry() {
+        StreamState state = streamState;
+        Instant start = nextStreamStart;
+        String event = eventID;
+        if (state == StreamState.SEARCH_NEXT_EVENT || state == StreamState.STANDBY || start == null || event == null) return null;
+        return new ScheduleSnapshot.Entry(seriesID, event, start, state);
+    }
+
+    public Duration step() {
+        if (cluster != null && !claimed()) return cluster.heartbeatInterval();
         try {
-            JSONArray array = nextEventJson.getJSONArray("results");
-            JSONObject nextEvent = array.getJSONObject(0);
-            String start = nextEvent.getString("start");
-            OffsetDateTime dateTime = OffsetDateTime.parse(start);
+            return switch (streamState) {
+                case SEARCH_NEXT_EVENT -> searchNextEvent();
+                case WAITING_FOR_STREAM -> waitForStream();
+                case RETRYING_LOADING_STREAM -> probeStream();
+                case RECORDING_STREAM -> recordStream();
+                // Only passed through while a streaming upload finishes; everything else goes to the upload queue.
+                case UPLOADING_STREAM, STANDBY -> {
+                    setState(StreamState.SEARCH_NEXT_EVENT);
+                    yield Duration.ZERO;
+                }
+            };
+        } catch (Exception e) {
+            events.error("Unexpected error. Retrying in 15 minutes", e);
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return RETRY_DELAY;
+        }
+    }
 
-            System.out.println("Next event starts at " + dateTime);
+    /**
+     * In cluster mode, checks that this instance holds the series. Otherwise the recorder waits in {@code STANDBY};
+     * once it gets the series (back), it starts over with discovery, which also picks up an event that is already live.
+     */
+    private boolean claimed() {
+        if (cluster.claim(seriesID)) {
+            if (streamState == StreamState.STANDBY) {
+                events.log(RecorderEvents.Kind.INFO, "Responsible for the series now");
+                setState(StreamState.SEARCH_NEXT_EVENT);
+            }
+            return true;
+        }
+        if (streamState != StreamState.STANDBY) {
+            events.log(RecorderEvents.Kind.INFO, "Handled by " + cluster.assignee(seriesID));
+            eventID = null;
+            nextStreamStart = null;
+            nextStreamEnd = null;
+            restored = false;
+            setState(StreamState.STANDBY);
+        }
+        return false;
+    }
 
-            nextStreamStart = dateTime.toInstant().plusSeconds(30);
-            streamState = StreamState.WAITING_FOR_STREAM;
+    private Duration searchNextEvent() {
+        LectureEvent nextEvent;
+        try {
+            nextEvent = discovery.nextEvent(seriesID);
         } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Error parsing next event time. Retrying...");
-            sleepMinutes(15);
+            events.error("Event lookup failed. Retrying in 15 minutes", e);
+            return RETRY_DELAY;
+        }
+        if (nextEvent == null) {
+            events.log(RecorderEvents.Kind.API, "No upcoming event found. Retrying in 15 minutes");
+            return RETRY_DELAY;
         }
+
+        events.log(RecorderEvents.Kind.API, "Next event " + nextEvent.id() + " starts at " + nextEvent.start());
+
+        setNextEvent(nextEvent);
+        setState(StreamState.WAITING_FOR_STREAM);
+        return Duration.ZERO;
     }
 
-    private void waitForStream() {
+    private Duration waitForStream() {
+        if (restored) {
+            restored = false;
+            revalidateRestoredEvent();
+        }
         if (nextStreamStart == null) {
-            streamState = StreamState.SEARCH_NEXT_EVENT;
-            return;
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return Duration.ZERO;
+        }
+
+        Instant now = Instant.now();
+        Instant probeFrom = nextStreamStart.minus(PROBE_LEAD);
+        if (now.isBefore(probeFrom)) {
+            long millisUntilProbe = Duration.between(now, probeFrom).toMillis();
+            events.log(RecorderEvents.Kind.INFO, "Waiting " + millisUntilProbe / 1000 + " seconds for next stream");
+            return Duration.ofMillis(millisUntilProbe);
         }
 
-        long millisUntilStart = Duration.between(Instant.now(), nextStreamStart).toMillis();
-        if (millisUntilStart > 0) {
-            System.out.println("Waiting " + millisUntilStart / 1000 + " seconds for next stream...");
-            sleepMillis(millisUntilStart);
+        probeCount = 0;
+        changed();
+        if (now.isBefore(probeDeadline())) {
+            setState(StreamState.RETRYING_LOADING_STREAM);
+            return Duration.ZERO;
         }
 
+        // Probing window is over, e.g. the API still lists an event that never went live. Check once in a while.
         String streamUrl = getStreamUrl(eventID, password);
         if (streamUrl == null) {
-            System.out.println("Stream not active or URL missing. Retrying in 15 minutes...");
-            sleepMinutes(15);
-            streamState = StreamState.SEARCH_NEXT_EVENT;
-            return;
+            events.log(RecorderEvents.Kind.INFO, "Stream not active or URL missing. Retrying in 15 minutes");
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return RETRY_DELAY;
         }
+        startRecording(streamUrl);
+        return Duration.ZERO;
+    }
 
+    /**
+     * Polls the event from shortly before its scheduled start until it becomes active, backing off
+     * exponentially with jitter, so a late start is detected within seconds instead of a retry period.
+     */
+    private Duration probeStream() {
+        if (nextStreamStart == null) {
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return Duration.ZERO;
+        }
+        probeCount++;
+        probes.inc();
+        String streamUrl = getStreamUrl(eventID, password);
+        changed();
+        if (streamUrl != null) {
+            Duration delay = Duration.between(nextStreamStart, Instant.now());
+            lastDetectionDelay = delay.isNegative() ? Duration.ZERO : delay;
+            detectionDelay.observe(lastDetectionDelay.toMillis() / 1000.0);
+            events.log(RecorderEvents.Kind.INFO, "Stream active after " + probeCount + " probes, "
+                    + lastDetectionDelay.toSeconds() + " seconds after scheduled start");
+            startRecording(streamUrl);
+            return Duration.ZERO;
+        }
+
+        if (!Instant.now().isBefore(probeDeadline())) {
+            events.log(RecorderEvents.Kind.INFO, "Stream did not start within the probing window after " + probeCount + " probes. Retrying in 15 minutes");
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return RETRY_DELAY;
+        }
+        return probeDelay(probeCount);
+    }
+
+    private Instant probeDeadline() {
+        Instant giveUp = nextStreamStart.plus(PROBE_GIVE_UP);
+        Instant end = nextStreamEnd;
+        return end != null && end.isBefore(giveUp) ? end : giveUp;
+    }
+
+    static Duration probeDelay(int probes) {
+        double base = PROBE_INITIAL_DELAY.toMillis() * Math.pow(1.5, Math.min(probes - 1, 20));
+        double capped = Math.min(base, PROBE_MAX_DELAY.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private void startRecording(String streamUrl) {
         this.currentStreamJson = new JSONObject();
         this.currentStreamJson.put("url", streamUrl);
-        streamState = StreamState.RECORDING_STREAM;
+        setState(StreamState.RECORDING_STREAM);
     }
 
-    private void recordStream() {
-        String streamUrl = currentStreamJson.optString("url", null);
-        if (streamUrl == null) {
-            System.out.println("Stream URL not available, searching again...");
-            streamState = StreamState.SEARCH_NEXT_EVENT;
+    private void revalidateRestoredEvent() {
+        if (!nextStreamStart.isAfter(Instant.now())) {
+            // The restored event may be live right now. Probing its stream answers faster than discovery.
             return;
         }
-
-        System.out.println("Recording stream: " + streamUrl);
-        File outdir = new File("/streams");
-        outdir.mkdirs();
-        String filename = Instant.now().getEpochSecond() + ".mp4";
-        File file = new File(outdir, filename);
-
         try {
-            String[] command = {
-                    "ffmpeg",
-                    "-i", streamUrl,
-                    "-c:v", "copy",
-                    "-c:a", "aac",
-                    "-b:a", "128k",
-                    "-movflags", "+faststart",
-                    "-max_reload", "0",
-                    "-timeout", "5000000",
-                    "-rw_timeout", "5000000",
-                    "-loglevel", "warning",
-                    outdir.getPath() + "/" + filename
-            };
-            ;
-            Process p = new ProcessBuilder().inheritIO().command(command).start();
-            p.waitFor();
+            LectureEvent nextEvent = discovery.nextEvent(seriesID);
+            if (nextEvent == null) {
+                events.log(RecorderEvents.Kind.API, "Restored event is no longer scheduled");
+                nextStreamStart = null;
+                changed();
+                return;
+            }
+            Instant start = nextEvent.start().toInstant();
+            if (!nextEvent.id().equals(eventID) || !start.equals(nextStreamStart)) {
+                events.log(RecorderEvents.Kind.API, "Schedule changed since snapshot. Next event starts at " + nextEvent.start());
+                setNextEvent(nextEvent);
+            }
         } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Recording failed. Retrying search...");
-            streamState = StreamState.SEARCH_NEXT_EVENT;
-            return;
-        }
-
-        if (file.exists()) {
-            currentStreamJson.put("recordedFile", file.getAbsolutePath());
-            streamState = StreamState.UPLOADING_STREAM;
-        } else {
-            System.out.println("Recorded file missing. Retrying search...");
-            streamState = StreamState.SEARCH_NEXT_EVENT;
+            events.log(RecorderEvents.Kind.API, "Could not check restored schedule: " + e.getMessage() + ". Keeping snapshot");
         }
     }
 
-    private void uploadStream() {
-        String username = System.getenv("LECREC_USERNAME");
-        String password = System.getenv("LECREC_PASSWORD");
-        String directory = System.getenv("LECREC_DIRECTORY");
-        String endpoint = System.getenv("LECREC_ENDPOINT");
-
-        if (username == null || password == null || directory == null || endpoint == null) {
-            System.out.println("Upload skipped: Missing environment variables.");
-            streamState = StreamState.SEARCH_NEXT_EVENT;
-            return;
+    @SuppressWarnings("try") // the recording permit is only held, never used
+    private Duration recordStream() {
+        String streamUrl = currentStreamJson.optString("url", null);
+        if (streamUrl == null) {
+            events.log(RecorderEvents.Kind.RECORDING, "Stream URL not available, searching again");
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return Duration.ZERO;
         }
 
-        directory = new String(Base64.getDecoder().decode(directory), StandardCharsets.UTF_8);
-        endpoint = new String(Base64.getDecoder().decode(endpoint), StandardCharsets.UTF_8);
-
-        if (!endpoint.endsWith("/")) endpoint += "/";
-        if (directory.startsWith("/")) directory = directory.substring(1);
-        if (!directory.endsWith("/")) directory += "/";
+        events.log(RecorderEvents.Kind.RECORDING, "Recording stream: " + streamUrl);
+        File outdir = Config.streamsDir();
+        outdir.mkdirs();
+        List<File> files;
+
+        WebDavTarget target = WebDavTarget.fromEnv();
+        ResourceGovernor.Permit uploadPermit = Config.streamingUpload() && target != null
+                ? governor.tryAcquire(ResourceGovernor.Resource.UPLOAD) : null;
+        StreamingUpload streamingUpload = uploadPermit != null ? new StreamingUpload(target, uploadPermit) : null;
+        try (ResourceGovernor.Permit ignored = governor.acquire(ResourceGovernor.Resource.RECORDING, seriesID, this::changed)) {
+            // Series that start in the same second must not share a file, locally or on WebDAV.
+            String basename = Instant.now().getEpochSecond() + "-" + seriesID;
+            RecordingSession session = new RecordingSession(engine, seriesID, outdir, basename,
+                    () -> getStreamUrl(eventID, password));
+            AtomicBoolean firstPart = new AtomicBoolean(true);
+            synchronized (this) {
+                recordingThread = Thread.currentThread();
+            }
+            files = session.record(streamUrl, new RecordingEngine.Listener() {
+                @Override
+                public void output(File output) {
+                    sampleRecordedBytes();
+                    trackRecording(output);
+                    if (streamingUpload == null) return;
+                    // Only the first part can be streamed. Once capture restarts, the joined file is uploaded instead.
+                    // HLS directories are uploaded after recording.
+                    if (firstPart.getAndSet(false) && !output.isDirectory()) streamingUpload.start(output);
+                    else streamingUpload.cancel();
+                }
 
-        String filePath = currentStreamJson.optString("recordedFile", null);
-        if (filePath == null) {
-            System.out.println("No recorded file found to upload.");
-            streamState = StreamState.SEARCH_NEXT_EVENT;
-            return;
+                @Override
+                public void progress(RecordingProgress update) {
+                    progress = update;
+                    // Published to the registry and SSE clients at a slower pace than ffmpeg reports it,
+                    // so progress alone does not change the ETag of /api/recorders every two seconds.
+                    long now = System.nanoTime();
+                    if (now - progressPublished >= PROGRESS_INTERVAL.toNanos()) {
+                        progressPublished = now;
+                        changed();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            if (streamingUpload != null) streamingUpload.cancel();
+            events.error("Recording failed. Retrying search", e);
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return Duration.ZERO;
+        } finally {
+            // Under the lock, so no interrupt from stopRecording() arrives after the check below.
+            synchronized (this) {
+                recordingThread = null;
+            }
+            sampleRecordedBytes();
+            trackRecording(null);
+            progress = null;
         }
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            System.out.println("File not found: " + file.getAbsolutePath());
-            streamState = StreamState.SEARCH_NEXT_EVENT;
-            return;
+        // Clears the flag; stopRecording() interrupted the session, which returned what it had recorded.
+        if (Thread.interrupted()) {
+            if (streamingUpload != null) streamingUpload.cancel();
+            if (target != null && !files.isEmpty()) uploads.enqueue(seriesID, files);
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return Duration.ZERO;
         }
 
-        String credentials = username + ":" + password;
-        String basicAuth = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
-        String targetUrl = endpoint + directory + file.getName();
+        if (files.isEmpty()) {
+            if (streamingUpload != null) streamingUpload.cancel();
+            events.log(RecorderEvents.Kind.RECORDING, "Recorded file missing. Retrying search");
+            setState(StreamState.SEARCH_NEXT_EVENT);
+            return Duration.ZERO;
+        }
 
-        System.out.println("Uploading to: " + targetUrl);
+        discovery.recorded(seriesID, eventID);
+        if (streamingUpload != null && files.size() == 1) {
+            setState(StreamState.UPLOADING_STREAM);
+            if (finishStreamingUpload(streamingUpload, files.getFirst())) {
+                setState(StreamState.SEARCH_NEXT_EVENT);
+                return Duration.ZERO;
+            }
+        } else if (streamingUpload != null) {
+            streamingUpload.cancel();
+        }
 
-        RequestBody body = RequestBody.create(file, MediaType.parse("application/octet-stream"));
-        Request request = new Request.Builder()
-                .url(targetUrl)
-                .header("Authorization", basicAuth)
-                .put(body)
-                .build();
+        if (target == null) {
+            events.log(RecorderEvents.Kind.UPLOAD, "Upload skipped: Missing environment variables");
+        } else {
+            uploads.enqueue(seriesID, files);
+        }
+        setState(StreamState.SEARCH_NEXT_EVENT);
+        return Duration.ZERO;
+    }
 
-        try (Response response = httpclient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                System.out.println("Upload failed: " + response.code() + " " + response.message());
-                sleepMinutes(15);
-            } else {
-                System.out.println("Upload successful!");
-                Files.delete(Paths.get(file.getAbsolutePath()));
+    private boolean finishStreamingUpload(StreamingUpload streamingUpload, File file) {
+        try {
+            if (!streamingUpload.finish()) {
+                events.log(RecorderEvents.Kind.UPLOAD, "Streaming upload failed. Uploading the recorded file instead");
+                return false;
             }
+            events.log(RecorderEvents.Kind.UPLOAD, "Streaming upload of " + file.getName() + " successful");
+            uploadsSucceeded.inc();
+            uploadedBytes.add(file.length());
+            Files.delete(file.toPath());
+            return true;
         } catch (Exception e) {
-            System.out.println("Upload exception: " + e.getMessage());
-            e.printStackTrace();
-            sleepMinutes(15);
+            events.error("Streaming upload failed", e);
+            return false;
         }
-
-        streamState = StreamState.SEARCH_NEXT_EVENT;
     }
 
     // --- Helper methods ---
@@ -225,42 +475,29 @@ public class Recorder extends Thread {
         if (password != null) apiUrl += "?password=" + password;
 
         Request request = new Request.Builder().url(apiUrl).build();
+        long started = System.nanoTime();
         try (Response response = httpclient.newCall(request).execute()) {
+            streamUrlLatency.observeNanos(System.nanoTime() - started);
             if (!response.isSuccessful()) {
-                System.out.println("Could not get stream URL.");
+                events.log(RecorderEvents.Kind.API, response.code(), "Could not get stream URL");
                 return null;
             }
 
-            JSONObject json = new JSONObject(response.body().string());
-            if (!json.getBoolean("active")) {
-                System.out.println("Stream not active yet.");
-                return null;
-            }
-            return json.getString("manifest");
+            String manifest = parseManifest(response.body().charStream());
+            events.log(RecorderEvents.Kind.API, response.code(), manifest == null ? "Stream not active yet" : "Stream active");
+            return manifest;
         } catch (Exception e) {
-            e.printStackTrace();
+            events.error("Could not get stream URL", e);
             return null;
         }
     }
 
-    private String getNextEventId(String seriesID) {
-        String apiUrl = apiBase + "/api/livestream/events?limit=1&series=" + seriesID;
-        Request request = new Request.Builder().url(apiUrl).build();
-
-        try (Response response = httpclient.newCall(request).execute()) {
-            if (!response.isSuccessful()) return null;
-            JSONObject jsonObject = new JSONObject(response.body().string());
-            nextEventJson = jsonObject;
-            JSONArray results = jsonObject.getJSONArray("results");
-            JSONObject nextEvent = results.getJSONObject(0);
-            return nextEvent.getString("id");
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+    static String parseManifest(Reader body) {
+        JSONObject json = new JSONObject(new JSONTokener(body));
+        return json.getBoolean("active") ? json.getString("manifest") : null;
     }
 
-    private String extractPassword() {
+    static String extractPassword(String streamurl) {
         try {
             String[] split = streamurl.split("/");
             String last = split[split.length - 1];
@@ -271,28 +508,59 @@ public class Recorder extends Thread {
         }
     }
 
-    private String extractSeriesId() {
+    static String extractSeriesId(String streamurl) {
         String[] split = streamurl.split("/");
         String last = split[split.length - 1];
         return last.split("\\?")[0];
     }
 
-    private void sleepMinutes(int min) {
-        try {
-            Thread.sleep(Duration.ofMinutes(min).toMillis());
-        } catch (InterruptedException ignored) {
-        }
+    public Instant getNextStreamStart() {
+        return nextStreamStart;
     }
 
-    private void sleepMillis(long ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ignored) {
-        }
+    public int getProbeCount() {
+        return probeCount;
     }
 
-    public Instant getNextStreamStart() {
-        return nextStreamStart;
+    public Duration getLastDetectionDelay() {
+        return lastDetectionDelay;
+    }
+
+    /**
+     * The current status. Its version is taken before any field is read, so of two statuses built concurrently,
+     * the one with the higher version is never the older one.
+     */
+    public RecorderStatus status() {
+        long version = statusVersion.incrementAndGet();
+        return new RecorderStatus(seriesID, streamState, nextStreamStart, probeCount, lastDetectionDelay,
+                governor.waitingFor(seriesID), governor.queuePosition(seriesID), uploads.pending(seriesID), progress,
+                viewerBase.endsWith("/") ? viewerBase + seriesID : viewerBase, version);
+    }
+
+    /**
+     * Stops a recording in progress, e.g. because another cluster instance took over the series.
+     * What was recorded so far is finished and queued for upload by this instance.
+     */
+    public synchronized void stopRecording(String reason) {
+        Thread thread = recordingThread;
+        if (thread == null) return;
+        events.log(RecorderEvents.Kind.RECORDING, "Stopping recording: " + reason);
+        thread.interrupt();
+    }
+
+    public String getUrl() {
+        return streamurl;
+    }
+
+    /**
+     * Marks the recorder as removed. The {@link RecorderScheduler} no longer runs it once its current step is done.
+     */
+    public void retire() {
+        retired = true;
+    }
+
+    public boolean isRetired() {
+        return retired;
     }
 
     public String getSeriesID() {
@@ -0,0 +1,154 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent history of one series: state changes, API responses, ffmpeg exits, upload results and errors.
+ * Each series keeps its last {@code LECREC_EVENT_BUFFER} events in a ring buffer, which
+ * {@code /api/recorders/{seriesID}/events} reads back.
+ * Unless {@code LECREC_EVENT_STDOUT=false}, events are also printed to stdout with their series as prefix,
+ * by one background thread, so recorders never wait for the console.
+ */
+public final class RecorderEvents {
+    public enum Kind {STATE, API, RECORDING, FFMPEG, UPLOAD, ERROR, INFO}
+
+    public record Event(long seq, Instant time, Kind kind, Integer code, String message) {
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject()
+                    .put("seq", seq)
+                    .put("time", time.toString())
+                    .put("kind", kind);
+            if (code != null) json.put("code", code);
+            return json.put("message", message);
+        }
+    }
+
+    private static final int NO_CODE = Integer.MIN_VALUE;
+    private static final int CAPACITY = Math.max(1, Config.integer("LECREC_EVENT_BUFFER", 256));
+    private static final Map<String, RecorderEvents> bySeries = new ConcurrentHashMap<>();
+    private static final Stdout stdout = Config.string("LECREC_EVENT_STDOUT", "true").equalsIgnoreCase("false")
+            ? null : new Stdout();
+
+    private final String seriesID;
+    private final long[] times;
+    private final Kind[] kinds;
+    private final int[] codes;
+    private final String[] messages;
+    private long count;
+
+    RecorderEvents(String seriesID, int capacity) {
+        this.seriesID = seriesID;
+        this.times = new long[capacity];
+        this.kinds = new Kind[capacity];
+        this.codes = new int[capacity];
+        this.messages = new String[capacity];
+    }
+
+    /**
+     * The buffer of the series, created for its {@link Recorder} and dropped again by {@link #forget}.
+     */
+    public static RecorderEvents register(String seriesID) {
+        return bySeries.computeIfAbsent(seriesID, id -> new RecorderEvents(id, CAPACITY));
+    }
+
+    /**
+     * The buffer of the series for engines and uploads that only know the series ID. Once the recorder is gone,
+     * events still reach stdout but are not kept, so late uploads do not bring the buffer back.
+     */
+    public static RecorderEvents of(String seriesID) {
+        RecorderEvents events = bySeries.get(seriesID);
+        return events != null ? events : new RecorderEvents(seriesID, 1);
+    }
+
+    public static RecorderEvents find(String seriesID) {
+        return bySeries.get(seriesID);
+    }
+
+    public static void forget(String seriesID) {
+        bySeries.remove(seriesID);
+    }
+
+    public void log(Kind kind, String message) {
+        append(kind, NO_CODE, message, null);
+    }
+
+    /**
+     * Logs an event with a numeric result, such as an HTTP status or an exit code.
+     */
+    public void log(Kind kind, int code, String message) {
+        append(kind, code, message, null);
+    }
+
+    public void error(String message, Throwable error) {
+        append(Kind.ERROR, NO_CODE, message + ": " + error, error);
+    }
+
+    private void append(Kind kind, int code, String message, Throwable error) {
+        synchronized (this) {
+            int slot = (int) (count++ % times.length);
+            times[slot] = System.currentTimeMillis();
+            kinds[slot] = kind;
+            codes[slot] = code;
+            messages[slot] = message;
+        }
+        if (stdout != null) stdout.offer(new Line(seriesID, message, error));
+    }
+
+    /**
+     * Returns up to {@code limit} of the newest events after sequence number {@code after}, oldest first,
+     * optionally only those of one kind. Pass the last {@code seq} seen as {@code after} to follow a series.
+     */
+    public synchronized JSONArray toJson(long after, Kind kind, int limit) {
+        ArrayDeque<Event> events = new ArrayDeque<>();
+        long oldest = Math.max(after + 1, Math.max(0, count - times.length));
+        for (long seq = count - 1; seq >= oldest && events.size() < limit; seq--) {
+            int slot = (int) (seq % times.length);
+            if (kind != null && kinds[slot] != kind) continue;
+            events.addFirst(new Event(seq, Instant.ofEpochMilli(times[slot]), kinds[slot],
+                    codes[slot] == NO_CODE ? null : codes[slot], messages[slot]));
+        }
+        JSONArray json = new JSONArray();
+        events.forEach(event -> json.put(event.toJson()));
+        return json;
+    }
+
+    private record Line(String seriesID, String message, Throwable error) {
+    }
+
+    private static final class Stdout {
+        private final BlockingQueue<Line> queue = new ArrayBlockingQueue<>(8192);
+        private final Metrics.Counter dropped = Metrics.counter("lecrec_log_dropped_total",
+                "Events not printed to stdout because the console fell behind");
+
+        Stdout() {
+            Thread.ofPlatform().daemon().name("event-log").start(() -> {
+                try {
+                    while (true) print(queue.take());
+                } catch (InterruptedException ignored) {
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                Line line;
+                while ((line = queue.poll()) != null) print(line);
+            }));
+        }
+
+        void offer(Line line) {
+            // The ring buffer still has the event if the console cannot keep up.
+            if (!queue.offer(line)) dropped.inc();
+        }
+
+        private static void print(Line line) {
+            System.out.println("[" + line.seriesID() + "] " + line.message());
+            if (line.error() != null) line.error().printStackTrace();
+        }
+    }
+}
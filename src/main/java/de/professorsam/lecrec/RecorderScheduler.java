@@ -0,0 +1,114 @@
+package de.professorsam.lecrec;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Drives all recorders from one timer thread. Waiting costs nothing but a queued timer entry;
+ * when a recorder is due, its step runs on a virtual thread, so blocking HTTP calls and
+ * ffmpeg process waits do not tie up platform threads.
+ * A cancelled recorder is never interrupted; if it is in the middle of a step, it stops after that step.
+ */
+public class RecorderScheduler {
+    private static final Duration ERROR_DELAY = Duration.ofMinutes(15);
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Recorder, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    private final Set<Recorder> running = new HashSet<>();
+    // Woken while stepping; their next step follows right after the current one.
+    private final Set<Recorder> woken = new HashSet<>();
+    private volatile Consumer<Recorder> onStopped = recorder -> {
+    };
+
+    public RecorderScheduler() {
+        timer = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("recorder-scheduler").factory());
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public void schedule(Recorder recorder) {
+        schedule(recorder, Duration.ZERO);
+    }
+
+    public void scheduleAtFixedRate(Runnable task, Duration period) {
+        timer.scheduleAtFixedRate(() -> workers.execute(task), period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void schedule(Recorder recorder, Duration delay) {
+        ScheduledFuture<?> previous = pending.put(recorder, timer.schedule(() -> workers.execute(() -> run(recorder)),
+                Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS));
+        if (previous != null) previous.cancel(false);
+    }
+
+    /**
+     * Registers a listener that is called once a cancelled recorder has stopped.
+     */
+    public void onStopped(Consumer<Recorder> listener) {
+        this.onStopped = listener;
+    }
+
+    /**
+     * Retires the recorder and drops its pending step. A step that is running, such as a recording, is finished first.
+     */
+    public void cancel(Recorder recorder) {
+        boolean idle;
+        synchronized (this) {
+            recorder.retire();
+            woken.remove(recorder);
+            ScheduledFuture<?> next = pending.remove(recorder);
+            if (next != null) next.cancel(false);
+            idle = !running.contains(recorder);
+        }
+        if (idle) onStopped.accept(recorder);
+    }
+
+    /**
+     * Runs the recorder's next step right away instead of at its scheduled time.
+     * If it is stepping now, the next step follows as soon as the current one is done.
+     */
+    public synchronized void wake(Recorder recorder) {
+        if (recorder.isRetired()) return;
+        if (running.contains(recorder)) {
+            woken.add(recorder);
+            return;
+        }
+        ScheduledFuture<?> next = pending.remove(recorder);
+        // Already fired; that step is about to run.
+        if (next != null && !next.cancel(false)) return;
+        schedule(recorder);
+    }
+
+    private void run(Recorder recorder) {
+        synchronized (this) {
+            pending.remove(recorder);
+            // Cancelled between firing and running: cancel() has already reported it as stopped.
+            if (recorder.isRetired()) return;
+            // Never two steps of one recorder at a time; the running one reschedules itself.
+            if (!running.add(recorder)) return;
+        }
+        Duration delay;
+        try {
+            delay = recorder.step();
+        } catch (Throwable t) {
+            t.printStackTrace();
+            delay = ERROR_DELAY;
+        }
+        synchronized (this) {
+            running.remove(recorder);
+            if (!recorder.isRetired()) {
+                schedule(recorder, woken.remove(recorder) ? Duration.ZERO : delay);
+                return;
+            }
+        }
+        onStopped.accept(recorder);
+    }
+}
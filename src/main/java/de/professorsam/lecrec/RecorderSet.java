@@ -0,0 +1,223 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * The running recorders, changeable while LecRec runs. The stream URLs are stored in
+ * {@code <streams>/.lecrec-recorders.json}, which takes precedence over {@code LECREC_URLS} once it exists.
+ * Removing a recorder never interrupts it: a recording in progress is finished and queued for upload first,
+ * and only then does the recorder stop and disappear from the status.
+ */
+public class RecorderSet {
+
+    /**
+     * @param pending series that were added again while their removed recorder is still finishing a recording;
+     *                they start as soon as it has stopped
+     */
+    public record Diff(List<String> added, List<String> removed, List<String> pending) {
+    }
+
+    private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+    // URLs of series to start again once their retiring recorder has stopped.
+    private final Map<String, String> restarts = new LinkedHashMap<>();
+    private final Path path;
+    private final RecorderScheduler scheduler;
+    private final StatusRegistry registry;
+    private final Consumer<Recorder> onStart;
+    private long storedModified;
+
+    /**
+     * @param onStart schedules a new recorder, e.g. after restoring what a previous run knew about it
+     */
+    public RecorderSet(File streamsDir, RecorderScheduler scheduler, StatusRegistry registry, Consumer<Recorder> onStart) {
+        this.path = streamsDir.toPath().resolve(".lecrec-recorders.json");
+        this.scheduler = scheduler;
+        this.registry = registry;
+        this.onStart = onStart;
+        scheduler.onStopped(this::stopped);
+    }
+
+    /**
+     * Returns the stored URLs, or {@code fallback} if none were stored yet.
+     */
+    public List<String> storedUrls(List<String> fallback) {
+        if (!Files.exists(path)) return fallback;
+        try {
+            List<String> urls = new ArrayList<>();
+            new JSONArray(Files.readString(path, StandardCharsets.UTF_8)).forEach(url -> urls.add((String) url));
+            return urls;
+        } catch (Exception e) {
+            System.out.println("Could not read stored recorders: " + e.getMessage() + ". Using LECREC_URLS");
+            return fallback;
+        }
+    }
+
+    public synchronized List<Recorder> recorders() {
+        return List.copyOf(recorders.values());
+    }
+
+    public synchronized Optional<Recorder> get(String seriesID) {
+        return Optional.ofNullable(recorders.get(seriesID));
+    }
+
+    /**
+     * Starts a recorder for the URL. Returns false if a recorder for the series already exists,
+     * including one that was removed but is still finishing its recording.
+     */
+    public synchronized boolean add(String url) {
+        url = validate(url);
+        String seriesID = Recorder.extractSeriesId(url);
+        if (recorders.containsKey(seriesID)) return false;
+        start(url);
+        save();
+        return true;
+    }
+
+    /**
+     * Stops the recorder of the series once it is not recording. Returns false if there is no such recorder.
+     */
+    public synchronized boolean remove(String seriesID) {
+        Recorder recorder = recorders.get(seriesID);
+        if (recorder != null && recorder.isRetired() && restarts.remove(seriesID) != null) {
+            save();
+            return true;
+        }
+        if (recorder == null || recorder.isRetired()) return false;
+        System.out.println("Removing recorder " + seriesID);
+        scheduler.cancel(recorder);
+        save();
+        return true;
+    }
+
+    /**
+     * Brings the running recorders in line with {@code urls}: series that are new are started and series
+     * that are missing are removed. Recorders of series in both lists keep running untouched.
+     */
+    public synchronized Diff reload(Collection<String> urls) {
+        Map<String, String> wanted = new LinkedHashMap<>();
+        for (String url : urls) {
+            String valid = validate(url);
+            wanted.putIfAbsent(Recorder.extractSeriesId(valid), valid);
+        }
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        restarts.keySet().retainAll(wanted.keySet());
+        for (Recorder recorder : List.copyOf(recorders.values())) {
+            if (!wanted.containsKey(recorder.getSeriesID()) && !recorder.isRetired()) {
+                System.out.println("Removing recorder " + recorder.getSeriesID());
+                scheduler.cancel(recorder);
+                removed.add(recorder.getSeriesID());
+            }
+        }
+        wanted.forEach((seriesID, url) -> {
+            Recorder recorder = recorders.get(seriesID);
+            if (recorder == null) {
+                start(url);
+                added.add(seriesID);
+            } else if (recorder.isRetired()) {
+                restarts.put(seriesID, url);
+                pending.add(seriesID);
+            }
+        });
+        save();
+        if (!added.isEmpty() || !removed.isEmpty() || !pending.isEmpty()) {
+            System.out.println("Reloaded recorders: added " + added + ", removed " + removed + ", pending " + pending);
+        }
+        return new Diff(added, removed, pending);
+    }
+
+    /**
+     * Applies changes another cluster instance made to the stored URLs.
+     */
+    public synchronized void sync() {
+        long modified = path.toFile().lastModified();
+        if (modified == 0 || modified == storedModified) return;
+        storedModified = modified;
+        reload(storedUrls(List.of()));
+    }
+
+    /**
+     * Starts recorders for the URLs at startup without storing them.
+     */
+    public synchronized void startAll(List<String> urls) {
+        for (String url : urls) {
+            if (url.isBlank()) continue;
+            if (recorders.containsKey(Recorder.extractSeriesId(url.trim()))) continue;
+            start(url.trim());
+        }
+    }
+
+    private void start(String url) {
+        Recorder recorder = new Recorder(url);
+        recorder.onChange(changed -> registry.publish(changed.status()));
+        recorders.put(recorder.getSeriesID(), recorder);
+        registry.publish(recorder.status());
+        onStart.accept(recorder);
+    }
+
+    private synchronized void stopped(Recorder recorder) {
+        recorders.remove(recorder.getSeriesID(), recorder);
+        registry.remove(recorder.getSeriesID());
+        RecorderEvents.forget(recorder.getSeriesID());
+        Metrics.remove("series", recorder.getSeriesID());
+        System.out.println("Recorder " + recorder.getSeriesID() + " stopped");
+        String url = restarts.remove(recorder.getSeriesID());
+        if (url != null && !recorders.containsKey(recorder.getSeriesID())) {
+            start(url);
+            save();
+        }
+    }
+
+    private static String validate(String url) {
+        if (url == null || url.isBlank()) throw new IllegalArgumentException("Missing stream URL");
+        url = url.trim();
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid stream URL: " + url);
+        }
+        if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+            throw new IllegalArgumentException("Stream URL must be http or https: " + url);
+        }
+        if (Recorder.extractSeriesId(url).isBlank()) {
+            throw new IllegalArgumentException("Stream URL has no series ID: " + url);
+        }
+        return url;
+    }
+
+    private void save() {
+        JSONArray urls = new JSONArray();
+        recorders.values().stream().filter(recorder -> !recorder.isRetired())
+                .forEach(recorder -> urls.put(recorder.getUrl()));
+        restarts.values().forEach(urls::put);
+        String content = urls.toString(2);
+        try {
+            // Unchanged lists are not written, so instances that sync from the file do not keep touching it.
+            if (Files.exists(path) && Files.readString(path, StandardCharsets.UTF_8).equals(content)) return;
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, content, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            storedModified = path.toFile().lastModified();
+        } catch (IOException e) {
+            System.out.println("Could not store recorders: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONObject;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Immutable view of a recorder, published to the {@link StatusRegistry} whenever something about it changes.
+ * {@code version} increases with every status a recorder builds; it is not part of the JSON.
+ */
+public record RecorderStatus(String seriesID,
+                             StreamState streamState,
+                             Instant nextStreamStart,
+                             int probeCount,
+                             Duration detectionDelay,
+                             ResourceGovernor.Waiter queued,
+                             int queuePosition,
+                             int pendingUploads,
+                             RecordingProgress progress,
+                             String streamurl,
+                             long version) {
+
+    public RecorderStatus withVersion(long version) {
+        return new RecorderStatus(seriesID, streamState, nextStreamStart, probeCount, detectionDelay, queued,
+                queuePosition, pendingUploads, progress, streamurl, version);
+    }
+
+    public JSONObject toJson() {
+        JSONObject rec = new JSONObject();
+        rec.put("seriesID", seriesID);
+        rec.put("streamState", streamState);
+        rec.put("nextStreamStart", nextStreamStart != null ? nextStreamStart.toString() : Instant.now().minusSeconds(5).toString());
+        rec.put("probeCount", probeCount);
+        if (detectionDelay != null) {
+            rec.put("detectionDelaySeconds", detectionDelay.toMillis() / 1000.0);
+        }
+        if (queued != null) {
+            rec.put("queuedFor", queued.resource());
+            rec.put("queuedSince", queued.since().toString());
+            rec.put("queuePosition", queuePosition);
+        }
+        rec.put("pendingUploads", pendingUploads);
+        if (progress != null) {
+            rec.put("progress", progress.toJson());
+        }
+        rec.put("streamurl", streamurl);
+        return rec;
+    }
+}
@@ -0,0 +1,100 @@
+package de.professorsam.lecrec;
+
+import io.javalin.http.sse.SseClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes changes of the recorders' status to dashboards over Server-Sent Events: state, next start,
+ * pending uploads and recording progress go out as a {@code recorder} event with the recorder's JSON,
+ * and a recorder that was removed is announced with a {@code removed} event carrying its series ID.
+ * Every client has its own virtual thread and keeps only the newest update per series, so a slow browser
+ * neither holds up recorders nor other dashboards, and never collects more than one update per series.
+ */
+public class RecorderUpdates {
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public void register(SseClient client) {
+        Subscriber subscriber = new Subscriber(client);
+        client.keepAlive();
+        client.onClose(subscriber::close);
+        subscribers.add(subscriber);
+        Thread.ofVirtual().name("sse-client").start(subscriber::run);
+    }
+
+    public void publish(String seriesID, String json) {
+        subscribers.forEach(subscriber -> subscriber.offer(seriesID, new Update("recorder", json)));
+    }
+
+    public void removed(String seriesID) {
+        subscribers.forEach(subscriber -> subscriber.offer(seriesID, new Update("removed", seriesID)));
+    }
+
+    public void heartbeat() {
+        subscribers.forEach(Subscriber::keepalive);
+    }
+
+    private record Update(String event, String data) {
+    }
+
+    private final class Subscriber {
+        private final SseClient client;
+        // Newest update per series, waiting to be sent.
+        private final Map<String, Update> pending = new LinkedHashMap<>();
+        private final BlockingQueue<Boolean> wakeup = new ArrayBlockingQueue<>(1);
+        private boolean keepalive;
+        private boolean closed;
+
+        Subscriber(SseClient client) {
+            this.client = client;
+        }
+
+        synchronized void offer(String seriesID, Update update) {
+            if (closed) return;
+            pending.put(seriesID, update);
+            wakeup.offer(true);
+        }
+
+        synchronized void keepalive() {
+            keepalive = true;
+            wakeup.offer(true);
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending.clear();
+            wakeup.offer(true);
+        }
+
+        void run() {
+            try {
+                while (true) {
+                    wakeup.take();
+                    List<Update> updates;
+                    boolean ping;
+                    synchronized (this) {
+                        if (closed) return;
+                        updates = new ArrayList<>(pending.values());
+                        pending.clear();
+                        ping = keepalive;
+                        keepalive = false;
+                    }
+                    if (client.terminated()) return;
+                    updates.forEach(update -> client.sendEvent(update.event(), update.data()));
+                    if (ping) client.sendComment("keepalive");
+                }
+            } catch (InterruptedException ignored) {
+            } finally {
+                close();
+                subscribers.remove(this);
+            }
+        }
+    }
+}
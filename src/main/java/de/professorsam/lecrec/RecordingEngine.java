@@ -0,0 +1,56 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface RecordingEngine {
+
+    /**
+     * Receives what an engine learns about the recording while it runs.
+     */
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * Called with the output file as soon as its name is known, before any data is written.
+         */
+        void output(File file);
+
+        default void progress(RecordingProgress progress) {
+        }
+    }
+
+    /**
+     * Records the stream of the series behind {@code streamUrl} into {@code outdir} and blocks until the stream ends.
+     * Returns the written file, whose extension depends on the engine and the stream's container,
+     * or a directory for recordings stored as {@link StorageFormat#HLS}.
+     * {@code listener} is told about that file as soon as its name is known, and about progress if the engine reports it.
+     */
+    File record(String seriesID, String streamUrl, File outdir, String basename, Listener listener) throws IOException, InterruptedException;
+
+    /**
+     * Whether a written file only ever grows, so it can be hashed while it is being written.
+     */
+    default boolean appendOnly() {
+        return true;
+    }
+
+    default File record(String seriesID, String streamUrl, File outdir, String basename) throws IOException, InterruptedException {
+        return record(seriesID, streamUrl, outdir, basename, file -> {
+        });
+    }
+
+    static RecordingEngine fromConfig(ResourceGovernor governor) {
+        String engine = Config.string("LECREC_ENGINE", "ffmpeg");
+        StorageFormat format = StorageFormat.fromConfig();
+        return switch (engine.toLowerCase()) {
+            // The fallback writes fragmented MP4 so that, like the native engine, it only ever appends to its file.
+            case "native", "hls" -> new HlsRecordingEngine(Config.integer("LECREC_HLS_PARALLEL", 4),
+                    new FfmpegRecordingEngine(StorageFormat.FMP4, governor, new CodecPolicy()));
+            case "ffmpeg" -> new FfmpegRecordingEngine(format, governor, new CodecPolicy());
+            default -> {
+                System.out.println("Unknown recording engine " + engine + ". Falling back to ffmpeg");
+                yield new FfmpegRecordingEngine(format, governor, new CodecPolicy());
+            }
+        };
+    }
+}
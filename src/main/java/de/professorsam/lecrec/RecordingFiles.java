@@ -0,0 +1,133 @@
+package de.professorsam.lecrec;
+
+import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.NotFoundResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the recordings in the streams directory over HTTP, including files ffmpeg is still writing.
+ * A request sees the file as it was when the request arrived; single byte ranges are supported, so players
+ * can seek and interrupted downloads can resume. Files are read in slices straight into the response, never mapped
+ * into memory, so a recording that is deleted or rewritten while it is sent only ends that response.
+ * Hidden entries such as {@code .cluster} and {@code .lecrec-uploads} are never served.
+ */
+public class RecordingFiles {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final Path root;
+
+    public RecordingFiles(File streamsDir) {
+        this.root = streamsDir.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Lists the recordings in the streams directory, or in an HLS recording directory if {@code path} names one.
+     */
+    public void list(Context ctx, String path) throws IOException {
+        File dir = resolve(path).toFile();
+        if (!dir.isDirectory()) throw new NotFoundResponse();
+        File[] files = dir.listFiles(file -> !file.getName().startsWith("."));
+        JSONArray list = new JSONArray();
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparing(File::getName));
+            for (File file : files) {
+                list.put(new JSONObject()
+                        .put("name", file.getName() + (file.isDirectory() ? "/" : ""))
+                        .put("size", StorageFormat.size(file))
+                        .put("modified", Instant.ofEpochMilli(file.lastModified()).toString()));
+            }
+        }
+        ctx.contentType("application/json").result(list.toString());
+    }
+
+    public void serve(Context ctx, String path) throws IOException {
+        Path file = resolve(path);
+        if (Files.isDirectory(file)) {
+            list(ctx, path);
+            return;
+        }
+        if (!Files.isRegularFile(file)) throw new NotFoundResponse();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Fixed for this request even if ffmpeg keeps appending.
+            long size = channel.size();
+            long start = 0;
+            long end = size - 1;
+            String range = ctx.header("Range");
+            if (range != null) {
+                Matcher matcher = RANGE.matcher(range.trim());
+                if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                    if (matcher.group(1).isEmpty()) {
+                        start = Math.max(0, size - Long.parseLong(matcher.group(2)));
+                    } else {
+                        start = Long.parseLong(matcher.group(1));
+                        if (!matcher.group(2).isEmpty()) end = Math.min(end, Long.parseLong(matcher.group(2)));
+                    }
+                    if (start >= size || start > end) {
+                        ctx.status(416).header("Content-Range", "bytes */" + size);
+                        return;
+                    }
+                    ctx.status(206).header("Content-Range", "bytes " + start + "-" + end + "/" + size);
+                }
+                // Multiple or malformed ranges get the whole file, which is allowed.
+            }
+            long length = size == 0 ? 0 : end - start + 1;
+            ctx.res().setContentType(contentType(file.getFileName().toString()));
+            ctx.res().setContentLengthLong(length);
+            ctx.header("Accept-Ranges", "bytes");
+            ctx.header("Cache-Control", "no-store");
+            if (ctx.method().name().equals("HEAD") || length == 0) return;
+
+            // Bypasses Javalin's result handling and compression; the body is written right here.
+            WritableByteChannel out = Channels.newChannel(ctx.res().getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long sent = channel.transferTo(position, end - position + 1, out);
+                // Truncated or replaced since the request started; the client sees a short response.
+                if (sent <= 0) throw new IOException("Recording " + file.getFileName() + " shrank while it was sent");
+                position += sent;
+            }
+        }
+    }
+
+    /**
+     * Resolves a request path inside the streams directory, refusing anything that leaves it or touches hidden entries.
+     */
+    private Path resolve(String path) throws IOException {
+        String relative = path == null ? "" : path;
+        for (String segment : relative.split("/")) {
+            if (segment.startsWith(".") || segment.contains("\\")) throw new ForbiddenResponse();
+        }
+        Path resolved = root.resolve(relative).normalize();
+        if (!resolved.startsWith(root)) throw new ForbiddenResponse();
+        if (Files.exists(resolved) && !resolved.toRealPath().startsWith(root.toRealPath())) {
+            throw new ForbiddenResponse();
+        }
+        return resolved;
+    }
+
+    private static String contentType(String name) {
+        if (name.endsWith(".mp4")) return "video/mp4";
+        if (name.endsWith(".ts")) return "video/mp2t";
+        if (name.endsWith(".m3u8")) return "application/vnd.apple.mpegurl";
+        if (name.endsWith(".json")) return "application/json";
+        if (name.endsWith(".sha256")) return "text/plain; charset=utf-8";
+        return "application/octet-stream";
+    }
+}
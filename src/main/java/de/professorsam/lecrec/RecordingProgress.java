@@ -0,0 +1,84 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONObject;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One progress report of a running ffmpeg, as written by {@code -progress pipe:1}.
+ * Values ffmpeg reports as {@code N/A} are -1.
+ */
+public record RecordingProgress(double bitrateKbps,
+                                long totalSize,
+                                Duration outTime,
+                                double speed,
+                                double fps,
+                                long dropFrames,
+                                long dupFrames,
+                                Instant updated) {
+
+    public JSONObject toJson() {
+        return new JSONObject()
+                .put("bitrateKbps", bitrateKbps)
+                .put("totalSize", totalSize)
+                .put("outTimeSeconds", outTime.toMillis() / 1000.0)
+                .put("speed", speed)
+                .put("fps", fps)
+                .put("dropFrames", dropFrames)
+                .put("dupFrames", dupFrames)
+                .put("updated", updated.toString());
+    }
+
+    /**
+     * Collects the {@code key=value} lines of one report; ffmpeg ends every report with a {@code progress} line.
+     */
+    public static final class Parser {
+        private final Map<String, String> values = new HashMap<>();
+
+        /**
+         * Returns the report once its last line was read, otherwise null.
+         */
+        public RecordingProgress accept(String line) {
+            int equals = line.indexOf('=');
+            if (equals < 0) return null;
+            String key = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1).trim();
+            if (!key.equals("progress")) {
+                values.put(key, value);
+                return null;
+            }
+            RecordingProgress progress = new RecordingProgress(
+                    decimal(values.get("bitrate"), "kbits/s"),
+                    integer(values.get("total_size")),
+                    Duration.ofNanos(Math.max(0, integer(values.get("out_time_us"))) * 1000),
+                    decimal(values.get("speed"), "x"),
+                    decimal(values.get("fps"), ""),
+                    integer(values.get("drop_frames")),
+                    integer(values.get("dup_frames")),
+                    Instant.now());
+            values.clear();
+            return progress;
+        }
+
+        private static double decimal(String value, String unit) {
+            if (value == null) return -1;
+            try {
+                return Double.parseDouble(value.endsWith(unit) ? value.substring(0, value.length() - unit.length()).trim() : value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static long integer(String value) {
+            if (value == null) return -1;
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
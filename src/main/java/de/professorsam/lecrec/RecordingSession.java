@@ -0,0 +1,203 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Supervises the recording of one lecture. When the engine returns while the event is still active,
+ * e.g. because ffmpeg gave up after a short CDN hiccup, capture restarts right away into a new part file.
+ * At the end the parts are joined without re-encoding: MPEG-TS parts are concatenated byte by byte,
+ * MP4 parts are remuxed with ffmpeg's concat demuxer. Parts in different containers are kept separate.
+ * Parts that the engine only appends to are hashed while they are written (see {@link Checksums}).
+ */
+public class RecordingSession {
+    private static final StorageFormat FORMAT = StorageFormat.fromConfig();
+    private static final int MAX_PARTS = Math.max(1, Config.integer("LECREC_MAX_RECORDING_PARTS", 20));
+    private static final Duration MIN_PART_RUNTIME = Duration.ofSeconds(10);
+    private static final Duration RESTART_BACKOFF = Duration.ofSeconds(5);
+    private static final Metrics.Counter restarts = Metrics.counter("lecrec_recording_restarts_total",
+            "Recordings restarted because capture ended while the event was still active");
+
+    private final RecordingEngine engine;
+    private final String seriesID;
+    private final RecorderEvents events;
+    private final File outdir;
+    private final String basename;
+    private final Supplier<String> activeStreamUrl;
+    private final Duration restartBackoff;
+
+    /**
+     * @param activeStreamUrl returns the current stream URL while the event is active, otherwise null
+     */
+    public RecordingSession(RecordingEngine engine, String seriesID, File outdir, String basename,
+                            Supplier<String> activeStreamUrl) {
+        this(engine, seriesID, outdir, basename, activeStreamUrl, RESTART_BACKOFF);
+    }
+
+    RecordingSession(RecordingEngine engine, String seriesID, File outdir, String basename,
+                     Supplier<String> activeStreamUrl, Duration restartBackoff) {
+        this.engine = engine;
+        this.seriesID = seriesID;
+        this.events = RecorderEvents.of(seriesID);
+        this.outdir = outdir;
+        this.basename = basename;
+        this.activeStreamUrl = activeStreamUrl;
+        this.restartBackoff = restartBackoff;
+    }
+
+    /**
+     * Records until the event is no longer active and returns the recording. That is a single file unless
+     * joining the parts failed, in which case the parts are returned in order.
+     * The list is empty if nothing was recorded.
+     * If the thread is interrupted, the engine stops and the parts recorded so far are returned unjoined,
+     * with the interrupt flag set again.
+     */
+    public List<File> record(String streamUrl, RecordingEngine.Listener listener) throws IOException, InterruptedException {
+        List<File> parts = new ArrayList<>();
+        String url = streamUrl;
+        for (int attempt = 1; ; attempt++) {
+            long started = System.nanoTime();
+            Checksums.Tail[] tail = new Checksums.Tail[1];
+            File[] output = new File[1];
+            try {
+                String name = attempt == 1 ? basename : basename + "-part" + attempt;
+                File part = engine.record(seriesID, url, outdir, name, new RecordingEngine.Listener() {
+                    @Override
+                    public void output(File file) {
+                        output[0] = file;
+                        if (engine.appendOnly() && !file.isDirectory()) tail[0] = new Checksums.Tail(file);
+                        listener.output(file);
+                    }
+
+                    @Override
+                    public void progress(RecordingProgress progress) {
+                        listener.progress(progress);
+                    }
+                });
+                if (tail[0] != null) tail[0].finish();
+                if (StorageFormat.size(part) > 0) {
+                    parts.add(part);
+                } else {
+                    StorageFormat.delete(part);
+                }
+            } catch (IOException e) {
+                if (tail[0] != null) tail[0].finish();
+                if (attempt == 1) throw e;
+                events.log(RecorderEvents.Kind.RECORDING, "Part " + attempt + " failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                if (tail[0] != null) tail[0].finish();
+                if (output[0] != null && StorageFormat.size(output[0]) > 0) parts.add(output[0]);
+                events.log(RecorderEvents.Kind.RECORDING, "Recording interrupted in part " + attempt);
+                Thread.currentThread().interrupt();
+                return parts;
+            }
+            if (attempt >= MAX_PARTS) {
+                events.log(RecorderEvents.Kind.RECORDING, "Reached " + MAX_PARTS + " attempts. Not restarting again");
+                break;
+            }
+            url = activeStreamUrl.get();
+            if (url == null) break;
+
+            restarts.inc();
+            events.log(RecorderEvents.Kind.RECORDING, "Recording ended while the event is still active. "
+                    + "Restarting into part " + (attempt + 1));
+            if (Duration.ofNanos(System.nanoTime() - started).compareTo(MIN_PART_RUNTIME) < 0) {
+                try {
+                    Thread.sleep(restartBackoff.toMillis());
+                } catch (InterruptedException e) {
+                    events.log(RecorderEvents.Kind.RECORDING, "Recording interrupted before part " + (attempt + 1));
+                    Thread.currentThread().interrupt();
+                    return parts;
+                }
+            }
+        }
+        // HLS recordings are directories; each part is uploaded as its own playlist.
+        if (parts.size() <= 1 || parts.getFirst().isDirectory()) return parts;
+
+        try {
+            File joined = join(parts);
+            events.log(RecorderEvents.Kind.RECORDING, "Joined " + parts.size() + " parts into " + joined.getName());
+            return List.of(joined);
+        } catch (IOException e) {
+            events.log(RecorderEvents.Kind.RECORDING, "Joining " + parts.size() + " parts failed: " + e.getMessage()
+                    + ". Uploading the parts separately");
+            return parts;
+        }
+    }
+
+    /**
+     * Joins the parts into the file of the first part and deletes the others.
+     * The checksums of the parts no longer apply; the joined file is hashed when it is uploaded.
+     * Parts in different containers, e.g. a native {@code .ts} part followed by an ffmpeg {@code .mp4} part,
+     * are left alone and an IOException is thrown, so they are uploaded separately.
+     */
+    static File join(List<File> parts) throws IOException, InterruptedException {
+        File first = parts.getFirst();
+        File joined = new File(first.getParentFile(), first.getName() + ".joining");
+        if (parts.stream().allMatch(part -> part.getName().endsWith(".ts"))) {
+            concatenate(parts, joined);
+        } else if (parts.stream().allMatch(part -> part.getName().endsWith(".mp4"))) {
+            remux(parts, joined);
+        } else {
+            throw new IOException("parts are in different containers");
+        }
+        Files.move(joined.toPath(), first.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(Checksums.sidecar(first).toPath());
+        for (File part : parts.subList(1, parts.size())) {
+            StorageFormat.delete(part);
+        }
+        return first;
+    }
+
+    private static void concatenate(List<File> parts, File joined) throws IOException {
+        try (FileChannel out = FileChannel.open(joined.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (File part : parts) {
+                try (FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void remux(List<File> parts, File joined) throws IOException, InterruptedException {
+        File list = new File(joined.getParentFile(), joined.getName() + ".txt");
+        try (PrintWriter writer = new PrintWriter(list, StandardCharsets.UTF_8)) {
+            for (File part : parts) {
+                writer.println("file '" + part.getAbsolutePath().replace("'", "'\\''") + "'");
+            }
+        }
+        try {
+            Process p = new ProcessBuilder().inheritIO().command(
+                    "ffmpeg", "-y",
+                    "-f", "concat", "-safe", "0",
+                    "-i", list.getPath(),
+                    "-c", "copy",
+                    "-movflags", FORMAT.movflags(),
+                    "-loglevel", "warning",
+                    "-f", "mp4",
+                    joined.getPath()).start();
+            int exitCode = p.waitFor();
+            if (exitCode != 0) {
+                Files.deleteIfExists(joined.toPath());
+                throw new IOException("ffmpeg concat exited with " + exitCode);
+            }
+        } finally {
+            Files.deleteIfExists(list.toPath());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package de.professorsam.lecrec;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many recordings, audio transcodes and uploads run at once across all recorders.
+ * Work that has to wait is queued in arrival order, and uploads are held back while any recording is queued.
+ */
+public class ResourceGovernor {
+
+    public enum Resource {
+        RECORDING, TRANSCODE, UPLOAD
+    }
+
+    public record Waiter(Resource resource, String seriesID, Instant since) {
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final Resource resource;
+        private boolean released;
+
+        private Permit(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (released) return;
+                released = true;
+                inUse.merge(resource, -1, Integer::sum);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<Resource, Integer> limits = new EnumMap<>(Resource.class);
+    private final Map<Resource, Integer> inUse = new EnumMap<>(Resource.class);
+    private final List<Waiter> queue = new ArrayList<>();
+
+    public ResourceGovernor(int maxRecordings, int maxTranscodes, int maxUploads) {
+        limits.put(Resource.RECORDING, maxRecordings <= 0 ? Integer.MAX_VALUE : maxRecordings);
+        limits.put(Resource.TRANSCODE, maxTranscodes <= 0 ? Integer.MAX_VALUE : maxTranscodes);
+        limits.put(Resource.UPLOAD, maxUploads <= 0 ? Integer.MAX_VALUE : maxUploads);
+        for (Resource resource : Resource.values()) inUse.put(resource, 0);
+    }
+
+    public static ResourceGovernor fromConfig() {
+        return new ResourceGovernor(
+                Config.integer("LECREC_MAX_RECORDINGS", 0),
+                Config.integer("LECREC_MAX_TRANSCODES", Runtime.getRuntime().availableProcessors()),
+                Config.integer("LECREC_MAX_UPLOADS", 2));
+    }
+
+    public Permit acquire(Resource resource, String seriesID) throws InterruptedException {
+        return acquire(resource, seriesID, () -> {
+        });
+    }
+
+    /**
+     * Blocks until the resource is free and it is this caller's turn.
+     * {@code onQueueChange} runs when the caller has to queue and again when it leaves the queue.
+     */
+    public Permit acquire(Resource resource, String seriesID, Runnable onQueueChange) throws InterruptedException {
+        return acquire(resource, seriesID, onQueueChange, -1);
+    }
+
+    /**
+     * Like {@link #acquire(Resource, String)}, but gives up after {@code timeout} and returns null.
+     */
+    public Permit acquire(Resource resource, String seriesID, Duration timeout) throws InterruptedException {
+        return acquire(resource, seriesID, () -> {
+        }, Math.max(0, timeout.toNanos()));
+    }
+
+    private Permit acquire(Resource resource, String seriesID, Runnable onQueueChange, long timeoutNanos) throws InterruptedException {
+        boolean queued = false;
+        lock.lock();
+        Waiter waiter = new Waiter(resource, seriesID, Instant.now());
+        queue.add(waiter);
+        try {
+            if (!mayStart(waiter)) {
+                queued = true;
+                lock.unlock();
+                onQueueChange.run();
+                lock.lock();
+            }
+            long remaining = timeoutNanos;
+            while (!mayStart(waiter)) {
+                if (timeoutNanos < 0) {
+                    changed.await();
+                } else if (remaining > 0) {
+                    remaining = changed.awaitNanos(remaining);
+                } else {
+                    queue.remove(waiter);
+                    changed.signalAll();
+                    return null;
+                }
+            }
+            queue.remove(waiter);
+            inUse.merge(resource, 1, Integer::sum);
+            changed.signalAll();
+            return new Permit(resource);
+        } catch (InterruptedException e) {
+            queue.remove(waiter);
+            changed.signalAll();
+            throw e;
+        } finally {
+            lock.unlock();
+            if (queued) onQueueChange.run();
+        }
+    }
+
+    /**
+     * Takes the resource if it is free right now, without queueing. Returns null otherwise.
+     */
+    public Permit tryAcquire(Resource resource) {
+        lock.lock();
+        try {
+            if (!hasCapacity(resource) || recordingBeatsUpload(resource)) return null;
+            for (Waiter other : queue) {
+                if (other.resource() == resource) return null;
+            }
+            inUse.merge(resource, 1, Integer::sum);
+            return new Permit(resource);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Waiter waitingFor(String seriesID) {
+        lock.lock();
+        try {
+            for (Waiter waiter : queue) {
+                if (waiter.seriesID().equals(seriesID)) return waiter;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Position of the series in the queue of its resource, starting at 1, or 0 if it is not waiting.
+     */
+    public int queuePosition(String seriesID) {
+        lock.lock();
+        try {
+            Waiter mine = null;
+            int position = 0;
+            for (Waiter waiter : queue) {
+                if (mine == null && waiter.seriesID().equals(seriesID)) mine = waiter;
+            }
+            if (mine == null) return 0;
+            for (Waiter waiter : queue) {
+                if (waiter.resource() == mine.resource()) position++;
+                if (waiter == mine) return position;
+            }
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean mayStart(Waiter waiter) {
+        if (!hasCapacity(waiter.resource()) || recordingBeatsUpload(waiter.resource())) return false;
+        for (Waiter other : queue) {
+            if (other == waiter) return true;
+            if (other.resource() == waiter.resource()) return false;
+        }
+        return true;
+    }
+
+    private boolean recordingBeatsUpload(Resource resource) {
+        if (resource != Resource.UPLOAD) return false;
+        for (Waiter other : queue) {
+            if (other.resource() == Resource.RECORDING) return true;
+        }
+        return false;
+    }
+
+    private boolean hasCapacity(Resource resource) {
+        return inUse.get(resource) < limits.get(resource);
+    }
+}
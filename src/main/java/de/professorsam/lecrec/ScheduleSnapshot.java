@@ -0,0 +1,94 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persists what the recorders know about upcoming events, so a restart can resume waiting right away.
+ * The file is a header line with a CRC32 of the body, followed by one tab-separated line per recorder.
+ * It is replaced atomically and ignored entirely when the checksum does not match.
+ */
+public class ScheduleSnapshot {
+    private static final String HEADER = "lecrec-schedule v1 ";
+
+    public record Entry(String seriesID, String eventID, Instant nextStreamStart, StreamState streamState) {
+    }
+
+    private final Path path;
+    private String lastWritten;
+
+    public ScheduleSnapshot(File directory) {
+        this.path = directory.toPath().resolve(".lecrec-schedule");
+    }
+
+    public Map<String, Entry> load() {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.exists(path)) return entries;
+        try {
+            String content = Files.readString(path, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            if (newline < 0 || !content.startsWith(HEADER)) {
+                System.out.println("Ignoring schedule snapshot with unknown format");
+                return entries;
+            }
+            String body = content.substring(newline + 1);
+            if (!content.substring(HEADER.length(), newline).equals(checksum(body))) {
+                System.out.println("Ignoring schedule snapshot with invalid checksum");
+                return entries;
+            }
+            for (String line : body.split("\n")) {
+                if (line.isEmpty()) continue;
+                String[] fields = line.split("\t");
+                Entry entry = new Entry(fields[0], fields[1], Instant.ofEpochMilli(Long.parseLong(fields[2])), StreamState.valueOf(fields[3]));
+                entries.put(entry.seriesID(), entry);
+            }
+            lastWritten = body;
+        } catch (Exception e) {
+            System.out.println("Could not read schedule snapshot: " + e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the current schedule of all recorders, skipping the write when nothing changed.
+     */
+    public synchronized void save(Collection<Recorder> recorders) {
+        StringBuilder body = new StringBuilder();
+        for (Recorder recorder : List.copyOf(recorders)) {
+            Entry entry = recorder.snapshotEntry();
+            if (entry == null) continue;
+            body.append(entry.seriesID()).append('\t')
+                    .append(entry.eventID()).append('\t')
+                    .append(entry.nextStreamStart().toEpochMilli()).append('\t')
+                    .append(entry.streamState().name()).append('\n');
+        }
+        String content = body.toString();
+        if (content.equals(lastWritten)) return;
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, HEADER + checksum(content) + "\n" + content, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastWritten = content;
+        } catch (IOException e) {
+            System.out.println("Could not write schedule snapshot: " + e.getMessage());
+        }
+    }
+
+    private static String checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
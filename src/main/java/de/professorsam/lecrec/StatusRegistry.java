@@ -0,0 +1,105 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds the latest {@link RecorderStatus} of every recorder as one immutable, versioned snapshot.
+ * Publishing swaps in a new snapshot atomically; readers never lock and always see a consistent set.
+ * The JSON of a snapshot is serialized at most once and served with an ETag derived from its version.
+ */
+public class StatusRegistry {
+    private static final String BOOT_ID = UUID.randomUUID().toString().substring(0, 8);
+
+    public static final class Snapshot {
+        private final long version;
+        private final Map<String, RecorderStatus> statuses;
+        private volatile byte[] json;
+
+        private Snapshot(long version, Map<String, RecorderStatus> statuses) {
+            this.version = version;
+            this.statuses = Collections.unmodifiableMap(statuses);
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public Map<String, RecorderStatus> statuses() {
+            return statuses;
+        }
+
+        public String etag() {
+            return "\"" + BOOT_ID + "-" + version + "\"";
+        }
+
+        public byte[] json() {
+            byte[] bytes = json;
+            if (bytes == null) {
+                JSONArray root = new JSONArray();
+                statuses.values().forEach(status -> root.put(status.toJson()));
+                bytes = root.toString().getBytes(StandardCharsets.UTF_8);
+                json = bytes;
+            }
+            return bytes;
+        }
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(new Snapshot(0, Map.of()));
+    private final List<BiConsumer<RecorderStatus, RecorderStatus>> listeners = new CopyOnWriteArrayList<>();
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Registers a listener that receives the previous (possibly null) and the new status of every change.
+     * When a recorder is removed, the new status is null.
+     */
+    public void onChange(BiConsumer<RecorderStatus, RecorderStatus> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Installs the status unless the registry already has a newer one of the same recorder, which happens when
+     * two threads publish for one recorder at once. Statuses that differ only in version change nothing.
+     */
+    public void publish(RecorderStatus status) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            RecorderStatus previous = snapshot.statuses().get(status.seriesID());
+            if (previous != null && (previous.version() > status.version()
+                    || previous.equals(status.withVersion(previous.version())))) {
+                return;
+            }
+            Map<String, RecorderStatus> statuses = new LinkedHashMap<>(snapshot.statuses());
+            statuses.put(status.seriesID(), status);
+            if (current.compareAndSet(snapshot, new Snapshot(snapshot.version() + 1, statuses))) {
+                listeners.forEach(listener -> listener.accept(previous, status));
+                return;
+            }
+        }
+    }
+
+    public void remove(String seriesID) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (!snapshot.statuses().containsKey(seriesID)) return;
+            Map<String, RecorderStatus> statuses = new LinkedHashMap<>(snapshot.statuses());
+            RecorderStatus previous = statuses.remove(seriesID);
+            if (current.compareAndSet(snapshot, new Snapshot(snapshot.version() + 1, statuses))) {
+                listeners.forEach(listener -> listener.accept(previous, null));
+                return;
+            }
+        }
+    }
+}
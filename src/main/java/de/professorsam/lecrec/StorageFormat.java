@@ -0,0 +1,90 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * How ffmpeg lays out a recording on disk. {@code MP4} moves the index to the front when the recording
+ * ends, which rewrites the whole file once more. {@code FMP4} writes a fragmented MP4 and {@code HLS}
+ * writes a directory of MPEG-TS segments with a playlist; both are final as soon as ffmpeg exits.
+ */
+public enum StorageFormat {
+    MP4,
+    FMP4,
+    HLS;
+
+    public static StorageFormat fromConfig() {
+        String value = Config.string("LECREC_STORAGE_FORMAT", "mp4");
+        StorageFormat format;
+        try {
+            format = valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown storage format " + value + ". Using mp4");
+            format = MP4;
+        }
+        // A streaming upload reads the file while it grows, which only works if nothing is rewritten at the end.
+        if (format == MP4 && Config.streamingUpload()) return FMP4;
+        return format;
+    }
+
+    public String movflags() {
+        return this == MP4 ? "+faststart" : "+frag_keyframe+empty_moov+default_base_moof";
+    }
+
+    /**
+     * Size of a recording, which for {@code HLS} is a directory.
+     */
+    public static long size(File recording) {
+        if (!recording.isDirectory()) return recording.length();
+        File[] files = recording.listFiles(File::isFile);
+        long size = 0;
+        if (files != null) {
+            for (File file : files) size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Whether ffmpeg finished the recording. An MP4 written with {@code +faststart} only gets its index
+     * ({@code moov} box) when ffmpeg exits cleanly and cannot be played without it. Other layouts are
+     * playable up to wherever they were cut off.
+     */
+    public static boolean finalized(File recording) {
+        if (recording.isDirectory() || !recording.getName().endsWith(".mp4")) return true;
+        try (FileChannel channel = FileChannel.open(recording.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            long size = channel.size();
+            long position = 0;
+            while (position + 8 <= size) {
+                header.clear();
+                header.limit(16);
+                channel.read(header, position);
+                header.flip();
+                long boxSize = Integer.toUnsignedLong(header.getInt());
+                String type = new String(new byte[]{header.get(), header.get(), header.get(), header.get()}, StandardCharsets.ISO_8859_1);
+                if (type.equals("moov")) return true;
+                if (boxSize == 1 && header.remaining() >= 8) boxSize = header.getLong();
+                // A box of size 0 extends to the end of the file, where a moov would have to follow.
+                if (boxSize < 8) return false;
+                position += boxSize;
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void delete(File recording) throws IOException {
+        Files.deleteIfExists(Checksums.sidecar(recording).toPath());
+        File[] files = recording.listFiles();
+        if (files != null) {
+            for (File file : files) Files.deleteIfExists(file.toPath());
+        }
+        Files.deleteIfExists(recording.toPath());
+    }
+}
@@ -5,5 +5,7 @@ public enum StreamState {
     WAITING_FOR_STREAM,
     RETRYING_LOADING_STREAM,
     RECORDING_STREAM,
-    UPLOADING_STREAM
+    UPLOADING_STREAM,
+    // Cluster mode: another instance is responsible for the series
+    STANDBY
 }
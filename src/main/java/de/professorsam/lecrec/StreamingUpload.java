@@ -0,0 +1,74 @@
+package de.professorsam.lecrec;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Uploads a recording to WebDAV while it is being recorded, using a single chunked PUT.
+ */
+public class StreamingUpload {
+    private final WebDavTarget target;
+    private final ResourceGovernor.Permit permit;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    private volatile boolean finished;
+    private volatile Call call;
+
+    public StreamingUpload(WebDavTarget target, ResourceGovernor.Permit permit) {
+        this.target = target;
+        this.permit = permit;
+    }
+
+    public void start(File file) {
+        String targetUrl = target.urlFor(file.getName());
+        System.out.println("Streaming upload to: " + targetUrl);
+        Request request = new Request.Builder()
+                .url(targetUrl)
+                .header("Authorization", target.authorization())
+                .put(Recorder.throttle.wrap(new GrowingFileRequestBody(file, () -> finished)))
+                .build();
+        call = Recorder.httpclient.newCall(request);
+        Thread.ofVirtual().name("streaming-upload-" + file.getName()).start(() -> {
+            try (Response response = call.execute()) {
+                if (!response.isSuccessful()) {
+                    System.out.println("Streaming upload failed: " + response.code() + " " + response.message());
+                }
+                result.complete(response.isSuccessful());
+            } catch (Exception e) {
+                System.out.println("Streaming upload exception: " + e.getMessage());
+                result.complete(false);
+            } finally {
+                permit.close();
+            }
+        });
+    }
+
+    public void cancel() {
+        finished = true;
+        Call current = call;
+        if (current != null) current.cancel();
+        else permit.close();
+        result.complete(false);
+    }
+
+    /**
+     * Marks the recording as complete and waits until the remaining bytes are sent.
+     * Returns whether the server accepted the upload.
+     */
+    public boolean finish() throws InterruptedException {
+        finished = true;
+        if (call == null) {
+            permit.close();
+            return false;
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Uploads finished recordings independently of the recorders. Every job is a small JSON file in
+ * {@code <streams>/.lecrec-uploads}, so pending uploads survive restarts. Jobs run on virtual threads;
+ * how many upload at once is up to the {@link ResourceGovernor}. A failed job is retried with exponential
+ * backoff until it succeeds. On startup, recordings in the streams directory that belong to no job are queued again.
+ * In cluster mode every instance keeps its jobs in a subdirectory named after it, and orphaned recordings are only
+ * picked up by the instance that takes over their series (see {@link #adopt}).
+ */
+public class UploadQueue {
+    private static final Duration INITIAL_BACKOFF = Duration.ofMinutes(1);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    // <epoch seconds>[-<series>][-part<n>][.mp4|.ts]; without an extension it is an HLS directory.
+    static final String UNFINALIZED = ".unfinalized";
+    private static final Pattern RECORDING = Pattern.compile("(\\d+)(?:-(.+?))?(?:-part\\d+)?(\\.mp4|\\.ts)?");
+    private static final Metrics.Histogram uploadDuration = Metrics.histogram("lecrec_upload_seconds",
+            "Duration of recording uploads", Metrics.DURATION_BUCKETS);
+    private static final Metrics.Counter uploadsSucceeded = Metrics.counter("lecrec_uploads_total", "Finished upload attempts", "result", "success");
+    private static final Metrics.Counter uploadsFailed = Metrics.counter("lecrec_uploads_total", "Finished upload attempts", "result", "failure");
+
+    @FunctionalInterface
+    public interface Transfer {
+        void upload(File file) throws IOException, InterruptedException;
+    }
+
+    record Job(String id, String seriesID, List<String> files, int attempts, Instant notBefore) {
+
+        JSONObject toJson() {
+            return new JSONObject()
+                    .put("id", id)
+                    .put("seriesID", seriesID)
+                    .put("files", new JSONArray(files))
+                    .put("attempts", attempts)
+                    .put("notBefore", notBefore.toEpochMilli());
+        }
+
+        static Job fromJson(JSONObject json) {
+            List<String> files = new ArrayList<>();
+            json.getJSONArray("files").forEach(file -> files.add((String) file));
+            return new Job(json.getString("id"), json.getString("seriesID"), List.copyOf(files),
+                    json.optInt("attempts", 0), Instant.ofEpochMilli(json.optLong("notBefore", 0)));
+        }
+    }
+
+    private final File streamsDir;
+    private final File root;
+    private final File dir;
+    private final ResourceGovernor governor;
+    private final Transfer transfer;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("upload-timer").daemon().factory());
+    private volatile Consumer<String> listener = seriesID -> {
+    };
+
+    public UploadQueue(File streamsDir, ResourceGovernor governor, Transfer transfer) {
+        this(streamsDir, null, governor, transfer);
+    }
+
+    /**
+     * @param node the cluster instance this queue belongs to, or null outside of cluster mode
+     */
+    public UploadQueue(File streamsDir, String node, ResourceGovernor governor, Transfer transfer) {
+        this.streamsDir = streamsDir;
+        this.root = new File(streamsDir, ".lecrec-uploads");
+        this.dir = node == null ? root : new File(root, node);
+        this.governor = governor;
+        this.transfer = transfer;
+    }
+
+    public static UploadQueue fromConfig(ResourceGovernor governor) {
+        return new UploadQueue(Config.streamsDir(), Config.string("LECREC_CLUSTER_NODE", null), governor, file -> {
+            WebDavTarget target = WebDavTarget.fromEnv();
+            if (target == null) throw new IOException("WebDAV target is not configured");
+            new ChunkedUploader(target).upload(file);
+        });
+    }
+
+    /**
+     * Registers a listener that receives the series ID whenever the number of its pending uploads changes.
+     */
+    public void onChange(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    public int pending(String seriesID) {
+        int count = 0;
+        for (Job job : jobs.values()) {
+            if (job.seriesID().equals(seriesID)) count++;
+        }
+        return count;
+    }
+
+    public void enqueue(String seriesID, List<File> files) {
+        Job job = new Job(UUID.randomUUID().toString(), seriesID,
+                files.stream().map(File::getAbsolutePath).toList(), 0, Instant.now());
+        save(job);
+        jobs.put(job.id(), job);
+        listener.accept(seriesID);
+        schedule(job);
+    }
+
+    /**
+     * Resumes the jobs left from a previous run and queues recordings that belong to none of them.
+     * MP4s without an index are renamed to {@code <name>.unfinalized} instead, since uploading them would
+     * delete the only copy of an unplayable file.
+     * Must run before any recorder starts writing to the streams directory.
+     */
+    public void recover() {
+        resume();
+        queueOrphans(seriesID -> true, referenced(), Duration.ZERO);
+    }
+
+    /**
+     * Resumes the jobs left from a previous run of this instance.
+     */
+    public void resume() {
+        File[] saved = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (saved == null) return;
+        for (File file : saved) {
+            Job job = read(file);
+            if (job == null) continue;
+            jobs.put(job.id(), job);
+            schedule(job);
+        }
+        if (!jobs.isEmpty()) System.out.println("Resuming " + jobs.size() + " pending uploads");
+    }
+
+    /**
+     * Takes over the series from another cluster instance: moves that instance's jobs for the series here
+     * and queues recordings of the series that no job of any instance refers to, e.g. one that was cut off
+     * when the other instance died. Only call this while holding the series' lease.
+     * Recordings modified within {@code quiet} are left alone, as are MP4s without an index: the other instance
+     * may only be stalled and still recording them, and queues them itself once it stops.
+     */
+    public void adopt(String previousNode, String seriesID, Duration quiet) {
+        if (previousNode != null && !dir.equals(root)) {
+            File[] saved = new File(root, previousNode).listFiles((d, name) -> name.endsWith(".json"));
+            if (saved != null && !new File(root, previousNode).equals(dir)) {
+                for (File file : saved) {
+                    Job job = read(file);
+                    if (job == null || !job.seriesID().equals(seriesID)) continue;
+                    try {
+                        Files.createDirectories(dir.toPath());
+                        Files.move(file.toPath(), jobFile(job.id()), StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException e) {
+                        System.out.println("Could not take over upload job " + job.id() + ": " + e.getMessage());
+                        continue;
+                    }
+                    RecorderEvents.of(seriesID).log(RecorderEvents.Kind.UPLOAD,
+                            "Took over upload of " + job.files().size() + " recordings from " + previousNode);
+                    jobs.put(job.id(), job);
+                    listener.accept(seriesID);
+                    schedule(job);
+                }
+            }
+        }
+        queueOrphans(seriesID::equals, referenced(), quiet);
+    }
+
+    private void queueOrphans(Predicate<String> series, Set<String> referenced, Duration quiet) {
+        File[] entries = streamsDir.listFiles();
+        if (entries == null) return;
+        for (File entry : entries) {
+            Matcher matcher = RECORDING.matcher(entry.getName());
+            if (!matcher.matches() || referenced.contains(entry.getAbsolutePath())) continue;
+            if (matcher.group(3) == null ? !new File(entry, "index.m3u8").isFile() : !entry.isFile()) continue;
+            String seriesID = matcher.group(2) != null ? matcher.group(2) : "unknown";
+            if (!series.test(seriesID)) continue;
+            if (!quiet.isZero()) {
+                long modified = matcher.group(3) == null ? new File(entry, "index.m3u8").lastModified() : entry.lastModified();
+                if (modified > System.currentTimeMillis() - quiet.toMillis() || !StorageFormat.finalized(entry)) {
+                    System.out.println("Leaving " + entry.getName() + " alone, it may still be recorded");
+                    continue;
+                }
+            } else if (!StorageFormat.finalized(entry)) {
+                // Nobody writes it anymore, but without an index it is not playable; keep it for a manual remux.
+                File aside = new File(entry.getParentFile(), entry.getName() + UNFINALIZED);
+                if (entry.renameTo(aside)) {
+                    System.out.println("Orphaned recording " + entry.getName() + " has no index. Moved it to " + aside.getName());
+                } else {
+                    System.out.println("Orphaned recording " + entry.getName() + " has no index and could not be moved aside");
+                }
+                continue;
+            }
+            System.out.println("Found orphaned recording " + entry.getName() + ". Queuing upload");
+            enqueue(seriesID, List.of(entry));
+        }
+    }
+
+    /**
+     * Files referred to by the jobs of this instance and, in cluster mode, of all other instances.
+     */
+    private Set<String> referenced() {
+        Set<String> files = new HashSet<>();
+        jobs.values().forEach(job -> files.addAll(job.files()));
+        File[] dirs = dir.equals(root) ? new File[0] : root.listFiles(File::isDirectory);
+        if (dirs == null) return files;
+        for (File other : dirs) {
+            File[] saved = other.listFiles((d, name) -> name.endsWith(".json"));
+            if (saved == null) continue;
+            for (File file : saved) {
+                Job job = read(file);
+                if (job != null) files.addAll(job.files());
+            }
+        }
+        return files;
+    }
+
+    private static Job read(File file) {
+        try {
+            return Job.fromJson(new JSONObject(Files.readString(file.toPath(), StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            System.out.println("Ignoring unreadable upload job " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void schedule(Job job) {
+        long delay = Math.max(0, Duration.between(Instant.now(), job.notBefore()).toMillis());
+        timer.schedule(() -> Thread.ofVirtual().name("upload-" + job.seriesID()).start(() -> run(job.id())),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("try") // the upload permit is only held, never used
+    private void run(String id) {
+        Job job = jobs.get(id);
+        if (job == null) return;
+        List<String> remaining = new ArrayList<>(job.files());
+        remaining.removeIf(path -> !new File(path).exists());
+        try (ResourceGovernor.Permit ignored = governor.acquire(ResourceGovernor.Resource.UPLOAD, job.seriesID())) {
+            while (!remaining.isEmpty()) {
+                File file = new File(remaining.getFirst());
+                long started = System.nanoTime();
+                long size = StorageFormat.size(file);
+                transfer.upload(file);
+                uploadDuration.observeNanos(System.nanoTime() - started);
+                uploadsSucceeded.inc();
+                Metrics.counter("lecrec_uploaded_bytes_total", "Bytes of recordings uploaded",
+                        "series", job.seriesID()).add(size);
+                RecorderEvents.of(job.seriesID()).log(RecorderEvents.Kind.UPLOAD, "Upload of " + file.getName() + " successful");
+                StorageFormat.delete(file);
+                remaining.removeFirst();
+                // Remember progress, so a retry only sends what is left.
+                if (!remaining.isEmpty()) {
+                    save(new Job(id, job.seriesID(), List.copyOf(remaining), job.attempts(), job.notBefore()));
+                }
+            }
+            finish(job);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            uploadsFailed.inc();
+            int attempts = job.attempts() + 1;
+            Duration backoff = backoff(attempts);
+            RecorderEvents.of(job.seriesID()).log(RecorderEvents.Kind.UPLOAD, attempts, "Upload failed (attempt " + attempts + "): "
+                    + e.getMessage() + ". Retrying in " + backoff.toMinutes() + " minutes");
+            Job retry = new Job(id, job.seriesID(), List.copyOf(remaining), attempts, Instant.now().plus(backoff));
+            save(retry);
+            jobs.put(id, retry);
+            schedule(retry);
+        }
+    }
+
+    private void finish(Job job) {
+        jobs.remove(job.id());
+        try {
+            Files.deleteIfExists(jobFile(job.id()));
+        } catch (IOException e) {
+            System.out.println("Could not remove upload job " + job.id() + ": " + e.getMessage());
+        }
+        listener.accept(job.seriesID());
+    }
+
+    static Duration backoff(int attempts) {
+        Duration backoff = INITIAL_BACKOFF.multipliedBy(1L << Math.min(attempts - 1, 10));
+        return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
+    }
+
+    private Path jobFile(String id) {
+        return dir.toPath().resolve(id + ".json");
+    }
+
+    private void save(Job job) {
+        try {
+            Files.createDirectories(dir.toPath());
+            Path path = jobFile(job.id());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, job.toJson().toString(), StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not persist upload job for " + job.seriesID() + ": " + e.getMessage());
+        }
+    }
+}
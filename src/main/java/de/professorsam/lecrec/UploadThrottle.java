@@ -0,0 +1,147 @@
+package de.professorsam.lecrec;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by all uploads, so they leave room on the link for live recordings.
+ * While any recorder is in {@link StreamState#RECORDING_STREAM} the budget drops to the recording rate,
+ * and it returns to the idle rate once none is recording. A rate of 0 means unlimited.
+ */
+public class UploadThrottle {
+    private static final long SLICE = 64 * 1024;
+    private static final Metrics.Counter throttled = Metrics.counter("lecrec_upload_throttled_seconds_total",
+            "Time uploads spent waiting for bandwidth");
+
+    private final long idleRate;
+    private final long recordingRate;
+    private volatile boolean recording;
+    private double tokens;
+    private long refilled = System.nanoTime();
+
+    /**
+     * @param idleRate      bytes per second while no recorder is recording, 0 for unlimited
+     * @param recordingRate bytes per second while any recorder is recording, 0 to keep the idle rate
+     */
+    public UploadThrottle(long idleRate, long recordingRate) {
+        this.idleRate = Math.max(0, idleRate);
+        this.recordingRate = Math.max(0, recordingRate);
+    }
+
+    public static UploadThrottle fromConfig() {
+        return new UploadThrottle(mbit("LECREC_UPLOAD_LIMIT_MBIT"), mbit("LECREC_UPLOAD_LIMIT_RECORDING_MBIT"));
+    }
+
+    private static long mbit(String name) {
+        return Config.integer(name, 0) * 1_000_000L / 8;
+    }
+
+    /**
+     * The current budget in bytes per second, 0 if unlimited.
+     */
+    public long rate() {
+        return recording && recordingRate > 0 ? recordingRate : idleRate;
+    }
+
+    public synchronized void setRecording(boolean recording) {
+        if (this.recording == recording) return;
+        refill(rate());
+        this.recording = recording;
+        tokens = Math.min(tokens, burst(rate()));
+    }
+
+    public boolean recording() {
+        return recording;
+    }
+
+    /**
+     * Takes {@code bytes} from the bucket and sleeps for as long as the bucket is in debt.
+     */
+    void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            long rate = rate();
+            if (rate == 0) return;
+            refill(rate);
+            tokens -= bytes;
+            waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+        }
+        if (waitNanos == 0) return;
+        throttled.add(waitNanos / 1e9);
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted while throttled");
+        }
+    }
+
+    private void refill(long rate) {
+        long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(burst(rate), tokens + (now - refilled) / 1e9 * rate);
+        }
+        refilled = now;
+    }
+
+    // A quarter of a second of traffic, so an idle bucket does not allow a long burst at full speed.
+    private static double burst(long rate) {
+        return Math.max(SLICE, rate / 4.0);
+    }
+
+    /**
+     * Wraps a request body so that everything it writes goes through this bucket.
+     */
+    public RequestBody wrap(RequestBody body) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                return body.contentLength();
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return body.isOneShot();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                BufferedSink limited = Okio.buffer(new ForwardingSink(sink) {
+                    @Override
+                    public void write(Buffer source, long byteCount) throws IOException {
+                        while (byteCount > 0) {
+                            long slice = Math.min(byteCount, SLICE);
+                            acquire(slice);
+                            super.write(source, slice);
+                            byteCount -= slice;
+                        }
+                    }
+                });
+                body.writeTo(limited);
+                limited.emit();
+            }
+        };
+    }
+
+    public JSONObject toJson() {
+        return new JSONObject()
+                .put("limitBytesPerSecond", rate())
+                .put("idleLimitBytesPerSecond", idleRate)
+                .put("recordingLimitBytesPerSecond", recordingRate > 0 ? recordingRate : idleRate)
+                .put("recording", recording);
+    }
+}
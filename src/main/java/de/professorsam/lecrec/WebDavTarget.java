@@ -0,0 +1,31 @@
+package de.professorsam.lecrec;
+
+import java.util.Base64;
+
+public record WebDavTarget(String endpoint, String directory, String username, String password) {
+
+    public static WebDavTarget fromEnv() {
+        String username = System.getenv("LECREC_USERNAME");
+        String password = System.getenv("LECREC_PASSWORD");
+        String directory = Config.base64("LECREC_DIRECTORY");
+        String endpoint = Config.base64("LECREC_ENDPOINT");
+
+        if (username == null || password == null || directory == null || endpoint == null) {
+            return null;
+        }
+
+        if (!endpoint.endsWith("/")) endpoint += "/";
+        if (directory.startsWith("/")) directory = directory.substring(1);
+        if (!directory.endsWith("/")) directory += "/";
+        return new WebDavTarget(endpoint, directory, username, password);
+    }
+
+    public String urlFor(String filename) {
+        return endpoint + directory + filename;
+    }
+
+    public String authorization() {
+        String credentials = username + ":" + password;
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
+    }
+}
@@ -0,0 +1,48 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChecksumsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tailHashesFileWhileItIsWritten() throws Exception {
+        File file = dir.resolve("100-series.ts").toFile();
+        Checksums.Tail tail = new Checksums.Tail(file);
+        byte[] block = new byte[256 * 1024];
+        try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE_NEW)) {
+            for (int i = 0; i < 8; i++) {
+                Arrays.fill(block, (byte) i);
+                out.write(block);
+                out.flush();
+                Thread.sleep(100);
+            }
+        }
+
+        assertTrue(tail.finish());
+        assertTrue(Checksums.sidecar(file).isFile());
+        assertEquals(Checksums.compute(file), Checksums.sha256(file));
+        assertTrue(Files.readString(Checksums.sidecar(file).toPath()).endsWith("  100-series.ts\n"));
+    }
+
+    @Test
+    void recomputesWhenSidecarIsMissing() throws Exception {
+        File file = dir.resolve("100-series.mp4").toFile();
+        Files.writeString(file.toPath(), "abc");
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Checksums.sha256(file));
+        assertTrue(Checksums.sidecar(file).isFile());
+    }
+}
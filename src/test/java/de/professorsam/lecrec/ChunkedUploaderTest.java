@@ -0,0 +1,130 @@
+package de.professorsam.lecrec;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploaderTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> headers = new CopyOnWriteArrayList<>();
+    private volatile String propfindResponse;
+    private volatile int moveStatus = 201;
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            String checksum = exchange.getRequestHeaders().getFirst("OC-Checksum");
+            if (checksum != null) headers.add(checksum);
+            if (exchange.getRequestMethod().equals("PROPFIND") && propfindResponse != null) {
+                byte[] xml = propfindResponse.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(207, xml.length);
+                exchange.getResponseBody().write(xml);
+            } else if (exchange.getRequestMethod().equals("MOVE")) {
+                exchange.sendResponseHeaders(moveStatus, -1);
+            } else {
+                exchange.sendResponseHeaders(exchange.getRequestMethod().equals("PROPFIND") ? 404 : 201, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void uploadsHlsDirectoryAsCollectionWithPlaylistLast() throws Exception {
+        File recording = dir.resolve("100-series").toFile();
+        assertTrue(recording.mkdir());
+        Files.writeString(recording.toPath().resolve("index.m3u8"), "#EXTM3U\n");
+        Files.writeString(recording.toPath().resolve("00001.ts"), "b");
+        Files.writeString(recording.toPath().resolve("00000.ts"), "a");
+        WebDavTarget target = new WebDavTarget("http://127.0.0.1:" + server.getAddress().getPort() + "/dav/",
+                "lectures/", "user", "secret");
+
+        new ChunkedUploader(target).upload(recording);
+
+        assertEquals(List.of(
+                "MKCOL /dav/lectures/100-series/",
+                "PROPFIND /dav/lectures/100-series/",
+                "PUT /dav/lectures/100-series/00000.ts",
+                "PUT /dav/lectures/100-series/00001.ts",
+                "PUT /dav/lectures/100-series/index.m3u8"), requests);
+        assertEquals(10, StorageFormat.size(recording));
+    }
+
+    @Test
+    void startsOverWhenTheServerDroppedTheUploadBeforeAssembly() throws Exception {
+        File recording = dir.resolve("100-series.mp4").toFile();
+        Files.write(recording.toPath(), new byte[6 * 1024 * 1024]);
+        WebDavTarget target = new WebDavTarget("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/remote.php/dav/files/user/", "lectures/", "user", "secret");
+        moveStatus = 404;
+
+        assertThrows(IOException.class, () -> new ChunkedUploader(target, 5 * 1024 * 1024).upload(recording));
+        assertFalse(ChunkedUploader.manifestFor(recording).exists());
+
+        requests.clear();
+        moveStatus = 201;
+        new ChunkedUploader(target, 5 * 1024 * 1024).upload(recording);
+        // All parts are sent again into a fresh upload directory.
+        assertEquals(2, requests.stream().filter(request -> request.startsWith("PUT /remote.php/dav/uploads/user/")).count());
+        assertTrue(requests.stream().anyMatch(request -> request.startsWith("MKCOL /remote.php/dav/uploads/user/")));
+    }
+
+    @Test
+    void sendsChecksumAndSkipsFilesTheServerAlreadyHas() throws Exception {
+        File recording = dir.resolve("100-series.mp4").toFile();
+        Files.writeString(recording.toPath(), "lecture");
+        String sha256 = Checksums.sha256(recording);
+        WebDavTarget target = new WebDavTarget("http://127.0.0.1:" + server.getAddress().getPort() + "/dav/",
+                "lectures/", "user", "secret");
+
+        new ChunkedUploader(target).upload(recording);
+        assertEquals(List.of("PROPFIND /dav/lectures/100-series.mp4", "PUT /dav/lectures/100-series.mp4"), requests);
+        assertEquals(List.of("SHA256:" + sha256), headers);
+
+        requests.clear();
+        propfindResponse = """
+                <?xml version="1.0"?>
+                <d:multistatus xmlns:d="DAV:" xmlns:oc="http://owncloud.org/ns">
+                  <d:response>
+                    <d:href>/dav/lectures/100-series.mp4</d:href>
+                    <d:propstat><d:prop>
+                      <d:getcontentlength>7</d:getcontentlength>
+                      <oc:checksums><oc:checksum>SHA256:%s</oc:checksum></oc:checksums>
+                    </d:prop></d:propstat>
+                  </d:response>
+                </d:multistatus>
+                """.formatted(sha256);
+        new ChunkedUploader(target).upload(recording);
+        assertEquals(List.of("PROPFIND /dav/lectures/100-series.mp4"), requests);
+    }
+}
@@ -0,0 +1,75 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterTest {
+
+    @TempDir
+    Path streams;
+
+    private Cluster node(String name) {
+        return new Cluster(streams.toFile(), name, Duration.ofMillis(100), Duration.ofMillis(500));
+    }
+
+    @Test
+    void assignsEverySeriesToExactlyOneInstance() {
+        Cluster a = node("a");
+        Cluster b = node("b");
+        a.heartbeat();
+        b.heartbeat();
+        a.heartbeat();
+
+        assertEquals(List.of("a", "b"), a.liveNodes());
+        List<String> series = IntStream.range(0, 50).mapToObj(i -> "series" + i).toList();
+        int claimedByA = 0;
+        for (String seriesID : series) {
+            assertEquals(a.assignee(seriesID), b.assignee(seriesID));
+            boolean claimedA = a.claim(seriesID);
+            boolean claimedB = b.claim(seriesID);
+            assertTrue(claimedA ^ claimedB, seriesID);
+            if (claimedA) claimedByA++;
+        }
+        assertTrue(claimedByA > 5 && claimedByA < 45, "unbalanced: " + claimedByA);
+    }
+
+    @Test
+    void takesOverSeriesOfADeadInstanceAfterItsLeaseExpires() throws Exception {
+        Cluster a = node("a");
+        Cluster b = node("b");
+        a.heartbeat();
+        b.heartbeat();
+        a.heartbeat();
+        String seriesID = IntStream.range(0, 100).mapToObj(i -> "series" + i)
+                .filter(id -> b.assignee(id).equals("b")).findFirst().orElseThrow();
+        assertTrue(b.claim(seriesID));
+        assertFalse(a.claim(seriesID));
+
+        List<String> previous = new CopyOnWriteArrayList<>();
+        a.onAcquire((id, node) -> previous.add(node));
+        List<String> lost = new CopyOnWriteArrayList<>();
+        b.onLost(lost::add);
+        // b stops sending heartbeats
+        Thread.sleep(700);
+        a.heartbeat();
+
+        assertEquals(List.of("a"), a.liveNodes());
+        assertTrue(a.claim(seriesID));
+        assertEquals(List.of("b"), previous);
+        // b was only stalled; it notices at its next heartbeat and leaves a's lease alone.
+        b.heartbeat();
+        assertFalse(b.holds(seriesID));
+        assertEquals(List.of(seriesID), lost);
+        assertFalse(b.claim(seriesID));
+        a.heartbeat();
+        assertTrue(a.holds(seriesID));
+    }
+}
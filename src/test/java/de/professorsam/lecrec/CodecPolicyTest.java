@@ -0,0 +1,22 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodecPolicyTest {
+
+    @Test
+    void recognisesAacAudio() {
+        assertTrue(CodecPolicy.audioIsAac("avc1.4d401f,mp4a.40.2"));
+        assertTrue(CodecPolicy.audioIsAac("mp4a.40.5, avc1.64001f"));
+        assertTrue(CodecPolicy.audioIsAac("avc1.4d401f"));
+    }
+
+    @Test
+    void transcodesOtherAudio() {
+        assertFalse(CodecPolicy.audioIsAac("avc1.4d401f,mp4a.40.34"));
+        assertFalse(CodecPolicy.audioIsAac("avc1.4d401f,ac-3"));
+        assertFalse(CodecPolicy.audioIsAac("hvc1.1.6.L93.B0,opus"));
+    }
+}
@@ -0,0 +1,141 @@
+package de.professorsam.lecrec;
+
+import io.javalin.Javalin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventDiscoveryTest {
+
+    private static final String EVENTS = """
+            {"count": 1, "next": null, "previous": null, "results": [
+              {"id": "e1", "title": "Lecture", "start": "2025-10-27T14:15:00+01:00", "end": "2025-10-27T16:00:00+01:00", "active": false}
+            ]}
+            """;
+
+    private static final Instant NOW = Instant.now();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final CountDownLatch arrived = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Javalin api;
+
+    @BeforeEach
+    void startApi() {
+        api = Javalin.create()
+                .get("/api/livestream/events", ctx -> {
+                    requests.incrementAndGet();
+                    if ("slow".equals(ctx.queryParam("series"))) {
+                        arrived.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                    if (!"1".equals(ctx.queryParam("limit"))) {
+                        ctx.contentType("application/json").result(schedulePage(ctx.queryParam("series"), ctx.queryParam("offset")));
+                        return;
+                    }
+                    if ("\"v1\"".equals(ctx.header("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        ctx.status(304);
+                        return;
+                    }
+                    ctx.header("ETag", "\"v1\"");
+                    ctx.contentType("application/json").result(EVENTS);
+                })
+                .start(0);
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.stop();
+    }
+
+    @Test
+    void cachesWithinTtl() throws Exception {
+        EventDiscovery discovery = new EventDiscovery("http://localhost:" + api.port(), Duration.ofMinutes(5));
+
+        LectureEvent first = discovery.nextEvent("series");
+        LectureEvent second = discovery.nextEvent("series");
+
+        assertEquals("e1", first.id());
+        assertEquals(first, second);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void concurrentLookupsShareOneRequest() throws Exception {
+        EventDiscovery discovery = new EventDiscovery("http://localhost:" + api.port(), Duration.ofMinutes(5));
+        try (ExecutorService lookups = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<LectureEvent> first = lookups.submit(() -> discovery.nextEvent("slow"));
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+            Future<LectureEvent> second = lookups.submit(() -> discovery.nextEvent("slow"));
+            // Give the second lookup time to find the first one in flight before the API answers.
+            Thread.sleep(200);
+            release.countDown();
+
+            assertEquals("e1", first.get(5, TimeUnit.SECONDS).id());
+            assertEquals("e1", second.get(5, TimeUnit.SECONDS).id());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void revalidatesWithEtagAfterInvalidate() throws Exception {
+        EventDiscovery discovery = new EventDiscovery("http://localhost:" + api.port(), Duration.ofMinutes(5));
+
+        discovery.nextEvent("series");
+        discovery.invalidate("series");
+        LectureEvent event = discovery.nextEvent("series");
+
+        assertEquals("e1", event.id());
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    void prefetchesPaginatedScheduleAndAnswersFollowingLectureFromMemory() throws Exception {
+        EventDiscovery discovery = new EventDiscovery("http://localhost:" + api.port(), Duration.ofMinutes(5), 2, 5);
+
+        LectureEvent first = discovery.nextEvent("series");
+        discovery.recorded("series", first.id());
+        LectureEvent second = discovery.nextEvent("series");
+        discovery.recorded("series", second.id());
+        LectureEvent third = discovery.nextEvent("series");
+
+        assertEquals("double-1", first.id());
+        assertEquals("double-2", second.id());
+        assertEquals("next-week", third.id());
+        assertNull(discovery.nextEvent("past"), "events that already ended are skipped");
+        assertEquals(3, requests.get());
+    }
+
+    private static String schedulePage(String series, String offset) {
+        if (series.equals("past")) {
+            return """
+                    {"next": null, "results": [{"id": "yesterday", "start": "%s", "end": "%s"}]}
+                    """.formatted(NOW.minus(Duration.ofDays(1)), NOW.minus(Duration.ofDays(1)).plusSeconds(5400));
+        }
+        if (offset == null) {
+            return """
+                    {"next": "?limit=2&series=series&offset=2", "results": [
+                      {"id": "double-2", "start": "%s", "end": "%s", "tags": ["b"]},
+                      {"id": "double-1", "start": "%s", "end": "%s", "description": {"room": "H1"}}
+                    ]}
+                    """.formatted(NOW.plusSeconds(6300), NOW.plusSeconds(11700), NOW.plusSeconds(600), NOW.plusSeconds(6000));
+        }
+        return """
+                {"next": null, "results": [{"id": "next-week", "title": null, "start": "%s", "end": null}]}
+                """.formatted(NOW.plus(Duration.ofDays(7)));
+    }
+}
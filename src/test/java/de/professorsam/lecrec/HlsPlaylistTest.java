@@ -0,0 +1,104 @@
+package de.professorsam.lecrec;
+
+import okhttp3.HttpUrl;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HlsPlaylistTest {
+
+    private static final HttpUrl BASE = HttpUrl.get("https://cdn.example/live/stream/index.m3u8");
+
+    @Test
+    void parsesMasterPlaylistAndPicksHighestBandwidth() {
+        String master = """
+                #EXTM3U
+                #EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360,CODECS="avc1.4d401e,mp4a.40.2"
+                low/index.m3u8
+                #EXT-X-STREAM-INF:BANDWIDTH=2500000,RESOLUTION=1280x720,CODECS="avc1.4d401f,mp4a.40.2"
+                https://other.example/high/index.m3u8
+                """;
+        HlsPlaylist playlist = HlsPlaylist.parse(master, BASE);
+
+        assertTrue(playlist.isMaster());
+        assertEquals(2, playlist.variants().size());
+        assertEquals("https://cdn.example/live/stream/low/index.m3u8", playlist.variants().get(0).uri());
+        assertEquals("https://other.example/high/index.m3u8", playlist.bestVariant().uri());
+        assertEquals("avc1.4d401f,mp4a.40.2", playlist.bestVariant().codecs());
+    }
+
+    @Test
+    void parsesLiveMediaPlaylist() {
+        String media = """
+                #EXTM3U
+                #EXT-X-VERSION:7
+                #EXT-X-TARGETDURATION:6
+                #EXT-X-MEDIA-SEQUENCE:120
+                #EXT-X-MAP:URI="init.mp4"
+                #EXTINF:6.006,
+                seg120.m4s
+                #EXTINF:5.5,
+                seg121.m4s
+                """;
+        HlsPlaylist playlist = HlsPlaylist.parse(media, BASE);
+
+        assertFalse(playlist.isMaster());
+        assertFalse(playlist.endList());
+        assertEquals(6, playlist.targetDuration());
+        assertEquals("https://cdn.example/live/stream/init.mp4", playlist.initSegment());
+        assertEquals(2, playlist.segments().size());
+        assertEquals(121, playlist.segments().get(1).sequence());
+        assertEquals("https://cdn.example/live/stream/seg121.m4s", playlist.segments().get(1).uri());
+    }
+
+    @Test
+    void detectsEndList() {
+        String media = """
+                #EXTM3U
+                #EXT-X-TARGETDURATION:10
+                #EXTINF:10,
+                a.ts
+                #EXT-X-ENDLIST
+                """;
+        HlsPlaylist playlist = HlsPlaylist.parse(media, BASE);
+
+        assertTrue(playlist.endList());
+        assertEquals(0, playlist.segments().get(0).sequence());
+    }
+
+    @Test
+    void flagsEncryptedSegmentsAndSeparateAudio() {
+        String media = """
+                #EXTM3U
+                #EXT-X-TARGETDURATION:6
+                #EXT-X-KEY:METHOD=NONE
+                #EXTINF:6,
+                a.ts
+                #EXT-X-KEY:METHOD=AES-128,URI="key.bin"
+                #EXTINF:6,
+                b.ts
+                """;
+        String master = """
+                #EXTM3U
+                #EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID="aac",NAME="German",URI="audio/index.m3u8"
+                #EXT-X-STREAM-INF:BANDWIDTH=2500000,AUDIO="aac"
+                video/index.m3u8
+                """;
+
+        assertEquals("segments are encrypted", HlsPlaylist.parse(media, BASE).unsupported());
+        assertEquals("audio is a separate rendition", HlsPlaylist.parse(master, BASE).unsupported());
+        assertNull(HlsPlaylist.parse(media.replace("METHOD=AES-128", "METHOD=NONE"), BASE).unsupported());
+        assertEquals("segments are byte ranges of larger files", HlsPlaylist.parse("""
+                #EXTM3U
+                #EXT-X-TARGETDURATION:6
+                #EXTINF:6,
+                #EXT-X-BYTERANGE:75232@0
+                all.ts
+                """, BASE).unsupported());
+    }
+
+    @Test
+    void rejectsNonPlaylist() {
+        assertThrows(IllegalArgumentException.class, () -> HlsPlaylist.parse("<html></html>", BASE));
+    }
+}
@@ -145,6 +145,7 @@ class IntegrationTest {
     }
 
     private void waitForStreamToFinish(){
+        boolean recorded = false;
         while(true){
             try {
                 Thread.sleep(1000);
@@ -156,8 +157,13 @@ class IntegrationTest {
                         continue;
                     }
                     JSONObject obj = json.getJSONObject(0);
-                    if(obj.getString("streamState").equals(StreamState.UPLOADING_STREAM.name())){
-                        Thread.sleep(3000);
+                    String state = obj.getString("streamState");
+                    if(state.equals(StreamState.RECORDING_STREAM.name())){
+                        recorded = true;
+                        continue;
+                    }
+                    // Uploads run in the background queue once the recording is finished.
+                    if(recorded && obj.optInt("pendingUploads", 0) == 0){
                         break;
                     }
                 } catch (IOException e) {
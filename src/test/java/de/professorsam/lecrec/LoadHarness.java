@@ -0,0 +1,137 @@
+package de.professorsam.lecrec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Offline load test: starts a {@link SyntheticLectureOrigin}, runs LecRec against it in a child JVM and
+ * reports start latency, CPU, memory and upload throughput once every lecture has been uploaded.
+ * Run with {@code ./gradlew loadTest -Pload.series=50}; see the README for all options.
+ */
+public class LoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        int series = Integer.getInteger("load.series", 20);
+        int bitrateKbps = Integer.getInteger("load.bitrateKbps", 2500);
+        Duration lecture = Duration.ofSeconds(Integer.getInteger("load.lectureSeconds", 120));
+        Duration spread = Duration.ofSeconds(Integer.getInteger("load.spreadSeconds", 30));
+        Duration lead = Duration.ofSeconds(Integer.getInteger("load.leadSeconds", 20));
+        Duration segment = Duration.ofSeconds(Integer.getInteger("load.segmentSeconds", 2));
+        String engine = System.getProperty("load.engine", "native");
+        int port = Integer.getInteger("load.port", 18080);
+
+        SyntheticLectureOrigin origin = new SyntheticLectureOrigin(series, Instant.now().plus(lead), spread, lecture,
+                bitrateKbps, segment);
+        origin.start(port);
+        Path workdir = Files.createTempDirectory("lecrec-load");
+        File log = workdir.resolve("lecrec.log").toFile();
+        System.out.println("Load test: " + series + " series at " + bitrateKbps + " kbit/s, " + lecture.toSeconds()
+                + "s lectures, engine " + engine + ". Output in " + workdir);
+
+        Process lecrec = launch(origin, series, engine, workdir, log);
+        Instant launched = Instant.now();
+        Instant deadline = origin.lectureStart(series - 1).plus(lecture).plus(Duration.ofMinutes(5));
+        long peakRss = 0;
+        try {
+            while (origin.uploadsFinished().size() < series && Instant.now().isBefore(deadline)) {
+                if (!lecrec.isAlive()) {
+                    System.out.println("LecRec exited with code " + lecrec.exitValue() + ", see " + log);
+                    break;
+                }
+                peakRss = Math.max(peakRss, residentBytes(lecrec.pid()));
+                Thread.sleep(1000);
+            }
+            Duration cpu = lecrec.info().totalCpuDuration().orElse(Duration.ZERO);
+            report(origin, series, Duration.between(launched, Instant.now()), cpu, peakRss);
+        } finally {
+            lecrec.destroy();
+            origin.stop();
+        }
+        System.exit(origin.uploadsFinished().size() < series ? 1 : 0);
+    }
+
+    private static Process launch(SyntheticLectureOrigin origin, int series, String engine, Path workdir, File log)
+            throws IOException {
+        StringJoiner urls = new StringJoiner(",");
+        for (int i = 0; i < series; i++) {
+            urls.add(origin.base() + "/livestream/embed_viewer/series/" + origin.seriesID(i));
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LecRec.class.getName());
+        Map<String, String> env = builder.environment();
+        env.put("LECREC_URLS", base64(urls.toString()));
+        env.put("LECREC_API_BASE", origin.base());
+        env.put("LECREC_ENDPOINT", base64(origin.base() + "/dav/"));
+        env.put("LECREC_DIRECTORY", base64("load/"));
+        env.put("LECREC_USERNAME", "load");
+        env.put("LECREC_PASSWORD", "load");
+        env.put("LECREC_STREAMS_DIR", workdir.toString());
+        env.put("LECREC_ENGINE", engine);
+        env.put("LECREC_PROBE_LEAD_SECONDS", "5");
+        env.put("LECREC_PROBE_MAX_SECONDS", "2");
+        return builder.redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private static void report(SyntheticLectureOrigin origin, int series, Duration wall, Duration cpu, long peakRss) {
+        List<Long> latencies = new ArrayList<>();
+        origin.firstFetch().forEach((i, fetched) ->
+                latencies.add(Duration.between(origin.lectureStart(i), fetched).toMillis()));
+        Collections.sort(latencies);
+
+        Instant lastUpload = origin.uploadsFinished().values().stream().max(Instant::compareTo).orElse(null);
+        double uploadSeconds = lastUpload == null ? 0
+                : Duration.between(origin.firstUploadStart(), lastUpload).toMillis() / 1000.0;
+
+        System.out.println();
+        System.out.println("Recordings started:  " + latencies.size() + "/" + series);
+        System.out.println("Recordings uploaded: " + origin.uploadsFinished().size() + "/" + series);
+        if (!latencies.isEmpty()) {
+            System.out.printf("Start latency:       p50 %d ms, p95 %d ms, max %d ms%n",
+                    percentile(latencies, 0.5), percentile(latencies, 0.95), latencies.getLast());
+        }
+        System.out.printf("CPU:                 %.1f s over %d s wall (%.2f cores)%n",
+                cpu.toMillis() / 1000.0, wall.toSeconds(), cpu.toMillis() / (double) Math.max(1, wall.toMillis()));
+        System.out.printf("Peak RSS:            %s%n", peakRss > 0 ? peakRss / (1024 * 1024) + " MB" : "unavailable");
+        System.out.printf("Segments served:     %d MB%n", origin.servedBytes() / (1024 * 1024));
+        System.out.printf("Uploaded:            %d MB", origin.uploadedBytes() / (1024 * 1024));
+        if (uploadSeconds > 0) {
+            System.out.printf(" at %.1f MB/s", origin.uploadedBytes() / (1024.0 * 1024.0) / uploadSeconds);
+        }
+        System.out.println();
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1));
+    }
+
+    /**
+     * Reads the resident set size from procfs. Returns 0 where that is not available.
+     */
+    private static long residentBytes(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return 0;
+    }
+
+    private static String base64(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,48 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void rendersCountersWithLabels() {
+        Metrics.counter("test_requests_total", "Test requests", "series", "a\"b").add(3);
+        Metrics.counter("test_requests_total", "Test requests", "series", "a\"b").inc();
+
+        String text = Metrics.render();
+
+        assertTrue(text.contains("# TYPE test_requests_total counter\n"));
+        assertTrue(text.contains("test_requests_total{series=\"a\\\"b\"} 4\n"));
+    }
+
+    @Test
+    void rendersCumulativeHistogramBuckets() {
+        Metrics.Histogram histogram = Metrics.histogram("test_latency_seconds", "Test latency", new double[]{0.1, 1});
+        histogram.observe(0.05);
+        histogram.observe(0.5);
+        histogram.observe(5);
+
+        String text = Metrics.render();
+
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"0.1\"} 1\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"1\"} 2\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_latency_seconds_sum 5.55\n"));
+        assertTrue(text.contains("test_latency_seconds_count 3\n"));
+    }
+
+    @Test
+    void removesSeriesFromEveryFamily() {
+        Metrics.counter("test_removed_total", "Test removal", "series", "gone", "state", "IDLE").inc();
+        Metrics.counter("test_removed_total", "Test removal", "series", "kept", "state", "IDLE").inc();
+        Metrics.counter("test_removed_bytes_total", "Test removal", "series", "gone").add(10);
+
+        Metrics.remove("series", "gone");
+        String text = Metrics.render();
+
+        assertFalse(text.contains("series=\"gone\""));
+        assertTrue(text.contains("test_removed_total{series=\"kept\",state=\"IDLE\"} 1\n"));
+    }
+}
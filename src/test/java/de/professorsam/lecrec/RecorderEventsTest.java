@@ -0,0 +1,55 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecorderEventsTest {
+
+    @Test
+    void keepsOnlyTheNewestEvents() {
+        RecorderEvents events = new RecorderEvents("series", 3);
+        for (int i = 0; i < 5; i++) {
+            events.log(RecorderEvents.Kind.INFO, "event " + i);
+        }
+
+        JSONArray all = events.toJson(-1, null, 100);
+
+        assertEquals(3, all.length());
+        assertEquals(2, all.getJSONObject(0).getLong("seq"));
+        assertEquals("event 4", all.getJSONObject(2).getString("message"));
+        assertFalse(all.getJSONObject(0).has("code"));
+    }
+
+    @Test
+    void filtersByKindAndSequence() {
+        RecorderEvents events = new RecorderEvents("series", 10);
+        events.log(RecorderEvents.Kind.STATE, "SEARCH_NEXT_EVENT -> WAITING_FOR_STREAM");
+        events.log(RecorderEvents.Kind.API, 200, "Stream not active yet");
+        events.log(RecorderEvents.Kind.API, 200, "Stream active");
+        events.log(RecorderEvents.Kind.FFMPEG, 0, "ffmpeg exited with code 0");
+
+        JSONArray api = events.toJson(-1, RecorderEvents.Kind.API, 100);
+        assertEquals(2, api.length());
+        assertEquals(200, api.getJSONObject(0).getInt("code"));
+
+        JSONArray newer = events.toJson(1, null, 100);
+        assertEquals(2, newer.length());
+        assertEquals("Stream active", newer.getJSONObject(0).getString("message"));
+
+        JSONArray last = events.toJson(-1, null, 1);
+        assertEquals(RecorderEvents.Kind.FFMPEG, last.getJSONObject(0).getEnum(RecorderEvents.Kind.class, "kind"));
+    }
+
+    @Test
+    void lateLoggersDoNotRecreateForgottenBuffers() {
+        RecorderEvents registered = RecorderEvents.register("forgotten-series");
+        assertSame(registered, RecorderEvents.of("forgotten-series"));
+
+        RecorderEvents.forget("forgotten-series");
+        RecorderEvents.of("forgotten-series").log(RecorderEvents.Kind.UPLOAD, "Upload of late.mp4 successful");
+
+        assertNull(RecorderEvents.find("forgotten-series"));
+    }
+}
@@ -0,0 +1,92 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecorderSetTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String A = "https://example.org/livestream/a?password=x";
+    private static final String B = "https://example.org/livestream/b";
+    private static final String C = "https://example.org/livestream/c";
+
+    private RecorderSet recorders(StatusRegistry registry) {
+        // Recorders are not scheduled, so nothing contacts the API.
+        return new RecorderSet(dir.toFile(), new RecorderScheduler(), registry, recorder -> {
+        });
+    }
+
+    @Test
+    void addRemoveAndReloadArePersisted() {
+        StatusRegistry registry = new StatusRegistry();
+        RecorderSet recorders = recorders(registry);
+        recorders.startAll(recorders.storedUrls(List.of(A, B)));
+
+        assertTrue(recorders.add(C));
+        assertFalse(recorders.add(C + "?password=other"));
+        assertTrue(recorders.remove("b"));
+        assertFalse(recorders.remove("b"));
+        assertEquals(List.of("a", "c"), recorders.recorders().stream().map(Recorder::getSeriesID).toList());
+        assertEquals(List.of("a", "c"), List.copyOf(registry.snapshot().statuses().keySet()));
+
+        Recorder a = recorders.get("a").orElseThrow();
+        RecorderSet.Diff diff = recorders.reload(List.of(A, B));
+        assertEquals(List.of("b"), diff.added());
+        assertEquals(List.of("c"), diff.removed());
+        assertSame(a, recorders.get("a").orElseThrow());
+
+        assertEquals(List.of(A, B), recorders(new StatusRegistry()).storedUrls(List.of()));
+    }
+
+    @Test
+    void restartsSeriesAddedAgainOnceItsRetiringRecorderStops() {
+        List<Consumer<Recorder>> stopped = new ArrayList<>();
+        RecorderScheduler busy = new RecorderScheduler() {
+            @Override
+            public void onStopped(Consumer<Recorder> listener) {
+                stopped.add(listener);
+            }
+
+            @Override
+            public void cancel(Recorder recorder) {
+                // Still recording: retired, but not stopped yet.
+                recorder.retire();
+            }
+        };
+        RecorderSet recorders = new RecorderSet(dir.toFile(), busy, new StatusRegistry(), recorder -> {
+        });
+        recorders.startAll(List.of(A));
+        Recorder old = recorders.get("a").orElseThrow();
+
+        assertEquals(List.of("a"), recorders.reload(List.of()).removed());
+        RecorderSet.Diff diff = recorders.reload(List.of(A));
+        assertEquals(List.of(), diff.added());
+        assertEquals(List.of("a"), diff.pending());
+        assertEquals(List.of(A), recorders.storedUrls(List.of()));
+
+        stopped.getFirst().accept(old);
+
+        Recorder restarted = recorders.get("a").orElseThrow();
+        assertNotSame(old, restarted);
+        assertFalse(restarted.isRetired());
+    }
+
+    @Test
+    void rejectsInvalidUrls() {
+        RecorderSet recorders = recorders(new StatusRegistry());
+
+        assertThrows(IllegalArgumentException.class, () -> recorders.add("ftp://example.org/a"));
+        assertThrows(IllegalArgumentException.class, () -> recorders.add(" "));
+        assertThrows(IllegalArgumentException.class, () -> recorders.reload(List.of(A, "not a url")));
+        assertTrue(recorders.recorders().isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package de.professorsam.lecrec;
+
+import io.javalin.Javalin;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingFilesTest {
+
+    @TempDir
+    Path streams;
+
+    private final OkHttpClient client = new OkHttpClient();
+    private Javalin app;
+
+    @BeforeEach
+    void start() throws Exception {
+        Files.writeString(streams.resolve("1761573600-series.ts"), "0123456789");
+        Files.createDirectories(streams.resolve(".cluster"));
+        Files.writeString(streams.resolve(".cluster/secret"), "hidden");
+        RecordingFiles files = new RecordingFiles(streams.toFile());
+        app = Javalin.create()
+                .get("/streams", ctx -> files.list(ctx, ""))
+                .get("/streams/<path>", ctx -> files.serve(ctx, ctx.pathParam("path")))
+                .start(0);
+    }
+
+    @AfterEach
+    void stop() {
+        app.stop();
+    }
+
+    private Response get(String path, String range) throws Exception {
+        Request.Builder request = new Request.Builder().url("http://localhost:" + app.port() + path);
+        if (range != null) request.header("Range", range);
+        return client.newCall(request.build()).execute();
+    }
+
+    @Test
+    void servesWholeFilesAndByteRanges() throws Exception {
+        try (Response response = get("/streams/1761573600-series.ts", null)) {
+            assertEquals(200, response.code());
+            assertEquals("video/mp2t", response.header("Content-Type"));
+            assertEquals("bytes", response.header("Accept-Ranges"));
+            assertEquals("0123456789", response.body().string());
+        }
+        try (Response response = get("/streams/1761573600-series.ts", "bytes=2-5")) {
+            assertEquals(206, response.code());
+            assertEquals("bytes 2-5/10", response.header("Content-Range"));
+            assertEquals("2345", response.body().string());
+        }
+        try (Response response = get("/streams/1761573600-series.ts", "bytes=-3")) {
+            assertEquals("789", response.body().string());
+        }
+        try (Response response = get("/streams/1761573600-series.ts", "bytes=10-")) {
+            assertEquals(416, response.code());
+            assertEquals("bytes */10", response.header("Content-Range"));
+        }
+        try (Response response = get("/streams", null)) {
+            JSONArray list = new JSONArray(response.body().string());
+            assertEquals(1, list.length());
+            assertEquals(10, list.getJSONObject(0).getLong("size"));
+        }
+    }
+
+    @Test
+    void refusesHiddenEntriesAndPathsOutsideTheStreamsDirectory() throws Exception {
+        try (Response response = get("/streams/.cluster/secret", null)) {
+            assertEquals(403, response.code());
+        }
+        // Jetty already rejects encoded separators as ambiguous; the handler refuses what gets through.
+        try (Response response = get("/streams/%2E%2E%2F%2E%2E%2Fetc%2Fpasswd", null)) {
+            assertTrue(response.code() == 400 || response.code() == 403, "status " + response.code());
+        }
+        try (Response response = get("/streams/a/%2E%2E/%2E%2E/etc/passwd", null)) {
+            assertTrue(response.code() == 400 || response.code() == 403 || response.code() == 404, "status " + response.code());
+        }
+        try (Response response = get("/streams/missing.mp4", null)) {
+            assertEquals(404, response.code());
+        }
+    }
+}
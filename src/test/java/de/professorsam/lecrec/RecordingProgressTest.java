@@ -0,0 +1,54 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingProgressTest {
+
+    @Test
+    void parsesOneReportPerProgressLine() {
+        RecordingProgress.Parser parser = new RecordingProgress.Parser();
+        String report = """
+                frame=1500
+                fps=25.01
+                stream_0_0_q=-1.0
+                bitrate=2512.3kbits/s
+                total_size=18874368
+                out_time_us=60000000
+                out_time=00:01:00.000000
+                dup_frames=2
+                drop_frames=7
+                speed=1.01x""";
+        for (String line : report.split("\n")) {
+            assertNull(parser.accept(line));
+        }
+
+        RecordingProgress progress = parser.accept("progress=continue");
+
+        assertEquals(2512.3, progress.bitrateKbps());
+        assertEquals(18874368, progress.totalSize());
+        assertEquals(Duration.ofMinutes(1), progress.outTime());
+        assertEquals(1.01, progress.speed());
+        assertEquals(7, progress.dropFrames());
+        assertEquals(2, progress.dupFrames());
+        assertEquals(60.0, progress.toJson().getDouble("outTimeSeconds"));
+    }
+
+    @Test
+    void reportsUnavailableValuesAsMinusOne() {
+        RecordingProgress.Parser parser = new RecordingProgress.Parser();
+        parser.accept("bitrate=N/A");
+        parser.accept("total_size=N/A");
+        parser.accept("speed=N/A");
+
+        RecordingProgress progress = parser.accept("progress=end");
+
+        assertEquals(-1, progress.bitrateKbps());
+        assertEquals(-1, progress.totalSize());
+        assertEquals(-1, progress.speed());
+        assertEquals(Duration.ZERO, progress.outTime());
+    }
+}
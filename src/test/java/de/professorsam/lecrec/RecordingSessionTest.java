@@ -0,0 +1,98 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingSessionTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restartsWhileEventIsActiveAndJoinsTsParts() throws Exception {
+        List<String> urls = new ArrayList<>();
+        RecordingEngine engine = (seriesID, streamUrl, outdir, basename, onOutput) -> {
+            urls.add(streamUrl);
+            File file = new File(outdir, basename + ".ts");
+            onOutput.output(file);
+            Files.writeString(file.toPath(), "part" + urls.size() + ";");
+            return file;
+        };
+        Iterator<String> active = List.of("https://cdn/b.m3u8", "https://cdn/c.m3u8").iterator();
+        RecordingSession session = new RecordingSession(engine, "series", dir.toFile(), "100-series",
+                () -> active.hasNext() ? active.next() : null, Duration.ZERO);
+
+        List<File> files = session.record("https://cdn/a.m3u8", file -> { });
+
+        assertEquals(List.of("https://cdn/a.m3u8", "https://cdn/b.m3u8", "https://cdn/c.m3u8"), urls);
+        assertEquals(1, files.size());
+        assertEquals("100-series.ts", files.getFirst().getName());
+        assertEquals("part1;part2;part3;", Files.readString(files.getFirst().toPath()));
+        try (var listing = Files.list(dir)) {
+            assertEquals(1, listing.count(), "parts are removed after joining");
+        }
+    }
+
+    @Test
+    void keepsPartsInDifferentContainersSeparate() throws Exception {
+        int[] calls = {0};
+        RecordingEngine engine = (seriesID, streamUrl, outdir, basename, onOutput) -> {
+            // The native engine records part 1, the ffmpeg fallback part 2.
+            File file = new File(outdir, basename + (++calls[0] == 1 ? ".ts" : ".mp4"));
+            onOutput.output(file);
+            Files.writeString(file.toPath(), "part" + calls[0]);
+            return file;
+        };
+        Iterator<String> active = List.of("https://cdn/b.m3u8").iterator();
+        RecordingSession session = new RecordingSession(engine, "series", dir.toFile(), "100-series",
+                () -> active.hasNext() ? active.next() : null, Duration.ZERO);
+
+        List<File> files = session.record("https://cdn/a.m3u8", file -> { });
+
+        assertEquals(List.of("100-series.ts", "100-series-part2.mp4"), files.stream().map(File::getName).toList());
+        assertEquals("part1", Files.readString(files.get(0).toPath()));
+        assertEquals("part2", Files.readString(files.get(1).toPath()));
+    }
+
+    @Test
+    void returnsPartsWhenInterruptedDuringRestartBackoff() throws Exception {
+        RecordingEngine engine = (seriesID, streamUrl, outdir, basename, onOutput) -> {
+            File file = new File(outdir, basename + ".ts");
+            onOutput.output(file);
+            Files.writeString(file.toPath(), "part");
+            Thread.currentThread().interrupt();
+            return file;
+        };
+        RecordingSession session = new RecordingSession(engine, "series", dir.toFile(), "100-series",
+                () -> "https://cdn/b.m3u8", Duration.ofMinutes(1));
+
+        List<File> files = session.record("https://cdn/a.m3u8", file -> { });
+
+        assertTrue(Thread.interrupted(), "the interrupt is passed on");
+        assertEquals(List.of(dir.resolve("100-series.ts").toFile()), files);
+    }
+
+    @Test
+    void stopsWhenEventIsNoLongerActive() throws Exception {
+        RecordingEngine engine = (seriesID, streamUrl, outdir, basename, onOutput) -> {
+            File file = new File(outdir, basename + ".mp4");
+            Files.writeString(file.toPath(), "data");
+            return file;
+        };
+        RecordingSession session = new RecordingSession(engine, "series", dir.toFile(), "100-series", () -> null, Duration.ZERO);
+
+        List<File> files = session.record("https://cdn/a.m3u8", file -> { });
+
+        assertEquals(List.of(dir.resolve("100-series.mp4").toFile()), files);
+    }
+}
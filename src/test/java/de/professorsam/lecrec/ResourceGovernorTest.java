@@ -0,0 +1,74 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceGovernorTest {
+
+    @Test
+    void respectsBudgets() {
+        ResourceGovernor governor = new ResourceGovernor(0, 1, 1);
+
+        ResourceGovernor.Permit transcode = governor.tryAcquire(ResourceGovernor.Resource.TRANSCODE);
+        assertNotNull(transcode);
+        assertNull(governor.tryAcquire(ResourceGovernor.Resource.TRANSCODE));
+
+        transcode.close();
+        transcode.close();
+        assertNotNull(governor.tryAcquire(ResourceGovernor.Resource.TRANSCODE));
+        assertNull(governor.tryAcquire(ResourceGovernor.Resource.TRANSCODE));
+    }
+
+    @Test
+    void waitsForATranscodeSlotUntilTheTimeout() throws Exception {
+        ResourceGovernor governor = new ResourceGovernor(0, 1, 1);
+        ResourceGovernor.Permit first = governor.acquire(ResourceGovernor.Resource.TRANSCODE, "a", Duration.ofMillis(50));
+        assertNotNull(first);
+
+        assertNull(governor.acquire(ResourceGovernor.Resource.TRANSCODE, "b", Duration.ofMillis(50)));
+        assertNull(governor.waitingFor("b"));
+
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS).execute(first::close);
+        assertNotNull(governor.acquire(ResourceGovernor.Resource.TRANSCODE, "b", Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void queuedRecordingsBeatUploads() throws Exception {
+        ResourceGovernor governor = new ResourceGovernor(1, 1, 1);
+        ResourceGovernor.Permit recording = governor.acquire(ResourceGovernor.Resource.RECORDING, "a");
+
+        CompletableFuture<ResourceGovernor.Permit> queuedRecording = CompletableFuture.supplyAsync(() -> acquire(governor, ResourceGovernor.Resource.RECORDING, "b"));
+        awaitQueued(governor, "b");
+        CompletableFuture<ResourceGovernor.Permit> queuedUpload = CompletableFuture.supplyAsync(() -> acquire(governor, ResourceGovernor.Resource.UPLOAD, "c"));
+        awaitQueued(governor, "c");
+
+        assertEquals(ResourceGovernor.Resource.UPLOAD, governor.waitingFor("c").resource());
+        assertEquals(1, governor.queuePosition("b"));
+        assertFalse(queuedUpload.isDone());
+
+        recording.close();
+        queuedRecording.get(5, TimeUnit.SECONDS);
+        assertNotNull(queuedUpload.get(5, TimeUnit.SECONDS));
+        assertNull(governor.waitingFor("c"));
+    }
+
+    private static ResourceGovernor.Permit acquire(ResourceGovernor governor, ResourceGovernor.Resource resource, String seriesID) {
+        try {
+            return governor.acquire(resource, seriesID);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void awaitQueued(ResourceGovernor governor, String seriesID) throws InterruptedException {
+        for (int i = 0; i < 500 && governor.waitingFor(seriesID) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(governor.waitingFor(seriesID));
+    }
+}
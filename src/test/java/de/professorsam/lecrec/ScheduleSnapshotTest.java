@@ -0,0 +1,54 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleSnapshotTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void roundTripsRecorderSchedule() {
+        Instant start = Instant.now().plus(Duration.ofHours(2)).truncatedTo(ChronoUnit.MILLIS);
+        Recorder recorder = new Recorder("http://uni.local/livestream/viewer/series/abc?password=secret");
+        assertTrue(recorder.restore(new ScheduleSnapshot.Entry("abc", "event-1", start, StreamState.WAITING_FOR_STREAM)));
+
+        new ScheduleSnapshot(dir).save(List.of(recorder, new Recorder("http://uni.local/livestream/viewer/series/idle")));
+        Map<String, ScheduleSnapshot.Entry> loaded = new ScheduleSnapshot(dir).load();
+
+        assertEquals(1, loaded.size());
+        assertEquals(new ScheduleSnapshot.Entry("abc", "event-1", start, StreamState.WAITING_FOR_STREAM), loaded.get("abc"));
+    }
+
+    @Test
+    void ignoresCorruptedSnapshot() throws Exception {
+        Recorder recorder = new Recorder("http://uni.local/livestream/viewer/series/abc");
+        recorder.restore(new ScheduleSnapshot.Entry("abc", "event-1", Instant.now().plusSeconds(600), StreamState.WAITING_FOR_STREAM));
+        new ScheduleSnapshot(dir).save(List.of(recorder));
+
+        Path file = dir.toPath().resolve(".lecrec-schedule");
+        Files.writeString(file, Files.readString(file).replace("event-1", "event-2"));
+
+        assertTrue(new ScheduleSnapshot(dir).load().isEmpty());
+    }
+
+    @Test
+    void doesNotRestoreStaleEvents() {
+        Recorder recorder = new Recorder("http://uni.local/livestream/viewer/series/abc");
+
+        assertFalse(recorder.restore(new ScheduleSnapshot.Entry("abc", "old", Instant.now().minus(Duration.ofDays(1)), StreamState.WAITING_FOR_STREAM)));
+        assertNull(recorder.snapshotEntry());
+    }
+}
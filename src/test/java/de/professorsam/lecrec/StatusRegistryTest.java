@@ -0,0 +1,77 @@
+package de.professorsam.lecrec;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusRegistryTest {
+    private static final AtomicLong versions = new AtomicLong();
+
+    private static RecorderStatus status(String seriesID, StreamState state) {
+        return new RecorderStatus(seriesID, state, Instant.parse("2025-10-27T15:00:00Z"), 0, null, null, 0, 0, null, "https://viewer/" + seriesID,
+                versions.incrementAndGet());
+    }
+
+    @Test
+    void bumpsVersionOnlyOnChange() {
+        StatusRegistry registry = new StatusRegistry();
+        registry.publish(status("a", StreamState.SEARCH_NEXT_EVENT));
+        StatusRegistry.Snapshot first = registry.snapshot();
+
+        registry.publish(status("a", StreamState.SEARCH_NEXT_EVENT));
+        assertSame(first, registry.snapshot());
+
+        registry.publish(status("a", StreamState.WAITING_FOR_STREAM));
+        StatusRegistry.Snapshot second = registry.snapshot();
+        assertEquals(first.version() + 1, second.version());
+        assertNotEquals(first.etag(), second.etag());
+    }
+
+    @Test
+    void dropsStatusesOlderThanThePublishedOne() {
+        StatusRegistry registry = new StatusRegistry();
+        RecorderStatus older = status("a", StreamState.WAITING_FOR_STREAM);
+        RecorderStatus newer = status("a", StreamState.RECORDING_STREAM);
+
+        registry.publish(newer);
+        registry.publish(older);
+
+        assertEquals(StreamState.RECORDING_STREAM, registry.snapshot().statuses().get("a").streamState());
+    }
+
+    @Test
+    void servesSerializedSnapshot() {
+        StatusRegistry registry = new StatusRegistry();
+        registry.publish(status("a", StreamState.RECORDING_STREAM));
+        registry.publish(status("b", StreamState.WAITING_FOR_STREAM));
+        registry.remove("a");
+
+        StatusRegistry.Snapshot snapshot = registry.snapshot();
+        JSONArray json = new JSONArray(new String(snapshot.json(), StandardCharsets.UTF_8));
+
+        assertSame(snapshot.json(), snapshot.json());
+        assertEquals(1, json.length());
+        assertEquals("b", json.getJSONObject(0).getString("seriesID"));
+        assertEquals("WAITING_FOR_STREAM", json.getJSONObject(0).getString("streamState"));
+    }
+
+    @Test
+    void notifiesListenersWithPreviousStatus() {
+        StatusRegistry registry = new StatusRegistry();
+        List<RecorderStatus> previous = new ArrayList<>();
+        registry.onChange((before, after) -> previous.add(before));
+
+        registry.publish(status("a", StreamState.SEARCH_NEXT_EVENT));
+        registry.publish(status("a", StreamState.WAITING_FOR_STREAM));
+
+        assertNull(previous.get(0));
+        assertEquals(StreamState.SEARCH_NEXT_EVENT, previous.get(1).streamState());
+    }
+}
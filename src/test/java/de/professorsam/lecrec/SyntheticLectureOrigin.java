@@ -0,0 +1,177 @@
+package de.professorsam.lecrec;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for everything a recorder talks to: the livestream events API, an HLS origin that
+ * produces live segments at a fixed bitrate while a lecture runs, and a WebDAV sink that discards uploads.
+ * Series {@code i} is called {@code load-000i}; their lectures start {@code spread / series} apart.
+ */
+public class SyntheticLectureOrigin {
+    private static final int WINDOW = 6;
+
+    private final int series;
+    private final Instant firstStart;
+    private final Duration spread;
+    private final Duration lecture;
+    private final int bitrateKbps;
+    private final Duration segmentDuration;
+    private final byte[] segment;
+
+    private final Map<Integer, Instant> firstFetch = new ConcurrentHashMap<>();
+    private final Map<String, Instant> uploadsFinished = new ConcurrentHashMap<>();
+    private final AtomicLong servedBytes = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private volatile Instant firstUploadStart;
+    private Javalin app;
+
+    public SyntheticLectureOrigin(int series, Instant firstStart, Duration spread, Duration lecture,
+                                  int bitrateKbps, Duration segmentDuration) {
+        this.series = series;
+        this.firstStart = firstStart;
+        this.spread = spread;
+        this.lecture = lecture;
+        this.bitrateKbps = bitrateKbps;
+        this.segmentDuration = segmentDuration;
+        this.segment = new byte[(int) (bitrateKbps * 125L * segmentDuration.toMillis() / 1000)];
+        new Random(42).nextBytes(segment);
+    }
+
+    public void start(int port) {
+        app = Javalin.create()
+                .get("/api/livestream/events", this::nextEvent)
+                .get("/api/livestream/events/{id}", this::eventDetails)
+                .get("/hls/{series}/master.m3u8", this::master)
+                .get("/hls/{series}/media.m3u8", this::media)
+                .get("/hls/{series}/{segment}.ts", this::segment)
+                .put("/dav/<path>", this::upload)
+                .start("127.0.0.1", port);
+    }
+
+    public void stop() {
+        app.stop();
+    }
+
+    public String base() {
+        return "http://127.0.0.1:" + app.port();
+    }
+
+    public String seriesID(int i) {
+        return String.format("load-%04d", i);
+    }
+
+    public Instant lectureStart(int i) {
+        return firstStart.plus(spread.multipliedBy(i).dividedBy(series));
+    }
+
+    public Map<Integer, Instant> firstFetch() {
+        return firstFetch;
+    }
+
+    public Map<String, Instant> uploadsFinished() {
+        return uploadsFinished;
+    }
+
+    public Instant firstUploadStart() {
+        return firstUploadStart;
+    }
+
+    public long servedBytes() {
+        return servedBytes.get();
+    }
+
+    public long uploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    private int index(String id) {
+        return Integer.parseInt(id.substring(id.lastIndexOf('-') + 1));
+    }
+
+    private void nextEvent(Context ctx) {
+        int i = index(ctx.queryParam("series"));
+        Instant start = lectureStart(i);
+        Instant end = start.plus(lecture);
+        JSONArray results = new JSONArray();
+        if (Instant.now().isBefore(end)) {
+            results.put(new JSONObject()
+                    .put("id", String.format("event-%04d", i))
+                    .put("title", "Synthetic lecture " + i)
+                    .put("start", OffsetDateTime.ofInstant(start, ZoneOffset.UTC).toString())
+                    .put("end", OffsetDateTime.ofInstant(end, ZoneOffset.UTC).toString())
+                    .put("active", !Instant.now().isBefore(start)));
+        }
+        ctx.contentType("application/json")
+                .result(new JSONObject().put("count", results.length()).put("results", results).toString());
+    }
+
+    private void eventDetails(Context ctx) {
+        int i = index(ctx.pathParam("id"));
+        Instant now = Instant.now();
+        boolean active = !now.isBefore(lectureStart(i)) && now.isBefore(lectureStart(i).plus(lecture));
+        ctx.contentType("application/json").result(new JSONObject()
+                .put("id", ctx.pathParam("id"))
+                .put("active", active)
+                .put("manifest", base() + "/hls/" + i + "/master.m3u8")
+                .toString());
+    }
+
+    private void master(Context ctx) {
+        firstFetch.putIfAbsent(Integer.parseInt(ctx.pathParam("series")), Instant.now());
+        ctx.contentType("application/vnd.apple.mpegurl").result("""
+                #EXTM3U
+                #EXT-X-STREAM-INF:BANDWIDTH=%d,CODECS="avc1.64001f,mp4a.40.2"
+                media.m3u8
+                """.formatted(bitrateKbps * 1000));
+    }
+
+    private void media(Context ctx) {
+        int i = Integer.parseInt(ctx.pathParam("series"));
+        long segmentMillis = segmentDuration.toMillis();
+        long total = (lecture.toMillis() + segmentMillis - 1) / segmentMillis;
+        long elapsed = Math.max(0, Duration.between(lectureStart(i), Instant.now()).toMillis());
+        long available = Math.min(total, elapsed / segmentMillis + 1);
+        long first = Math.max(0, available - WINDOW);
+
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n")
+                .append("#EXT-X-TARGETDURATION:").append((segmentMillis + 999) / 1000).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+        for (long n = first; n < available; n++) {
+            playlist.append("#EXTINF:").append(segmentMillis / 1000.0).append(",\n").append(n).append(".ts\n");
+        }
+        if (available == total && elapsed >= lecture.toMillis()) playlist.append("#EXT-X-ENDLIST\n");
+        ctx.contentType("application/vnd.apple.mpegurl").result(playlist.toString());
+    }
+
+    private void segment(Context ctx) {
+        servedBytes.addAndGet(segment.length);
+        ctx.contentType("video/mp2t").result(segment);
+    }
+
+    private void upload(Context ctx) throws IOException {
+        if (firstUploadStart == null) firstUploadStart = Instant.now();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream body = ctx.bodyInputStream()) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                uploadedBytes.addAndGet(read);
+            }
+        }
+        uploadsFinished.put(ctx.pathParam("path"), Instant.now());
+        ctx.status(201);
+    }
+}
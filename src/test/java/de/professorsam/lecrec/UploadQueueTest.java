@@ -0,0 +1,111 @@
+package de.professorsam.lecrec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadQueueTest {
+
+    @TempDir
+    Path streams;
+
+    @Test
+    void uploadsInBackgroundAndRemovesFileAndJob() throws Exception {
+        File recording = Files.writeString(streams.resolve("1761573600-series.mp4"), "video").toFile();
+        CountDownLatch done = new CountDownLatch(1);
+        UploadQueue queue = new UploadQueue(streams.toFile(), new ResourceGovernor(0, 1, 1), file -> { });
+        queue.onChange(seriesID -> {
+            if (queue.pending(seriesID) == 0) done.countDown();
+        });
+
+        queue.enqueue("series", List.of(recording));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(recording.exists());
+        assertArrayEquals(new String[0], streams.resolve(".lecrec-uploads").toFile().list());
+    }
+
+    @Test
+    void recoversSavedJobsAndOrphanedRecordings() throws Exception {
+        Files.writeString(streams.resolve("1761573600-a.mp4"), "queued before restart");
+        Files.writeString(streams.resolve("1761577200-b-part2.ts"), "orphan");
+        Files.writeString(streams.resolve("1761577200-b-part2.ts.upload.json"), "{}");
+        Files.writeString(streams.resolve("1761580800-c.mp4"), "cut off before the moov box");
+        Files.writeString(streams.resolve(".lecrec-schedule"), "not a recording");
+        Files.createDirectories(streams.resolve(".lecrec-uploads"));
+        Files.writeString(streams.resolve(".lecrec-uploads/job.json"), """
+                {"id": "job", "seriesID": "a", "files": ["%s"], "attempts": 2, "notBefore": 0}
+                """.formatted(streams.resolve("1761573600-a.mp4")));
+
+        List<String> uploaded = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        UploadQueue queue = new UploadQueue(streams.toFile(), new ResourceGovernor(0, 1, 1),
+                file -> uploaded.add(file.getName()));
+        queue.onChange(seriesID -> {
+            if (queue.pending(seriesID) == 0) done.countDown();
+        });
+
+        queue.recover();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("1761573600-a.mp4", "1761577200-b-part2.ts"), uploaded.stream().sorted().toList());
+        assertTrue(streams.resolve("1761580800-c.mp4" + UploadQueue.UNFINALIZED).toFile().exists());
+        assertTrue(streams.resolve(".lecrec-schedule").toFile().exists());
+    }
+
+    @Test
+    void adoptsJobsAndOrphansOfTheSeriesFromAnotherInstance() throws Exception {
+        Files.writeString(streams.resolve("1761573600-a.mp4"), "queued on b");
+        Files.write(streams.resolve("1761577200-a.mp4"), finishedMp4());
+        Files.write(streams.resolve("1761580800-a.mp4"), finishedMp4());
+        Files.writeString(streams.resolve("1761584400-a.mp4"), "no index, b may still be writing");
+        for (String old : List.of("1761577200-a.mp4", "1761584400-a.mp4")) {
+            streams.resolve(old).toFile().setLastModified(System.currentTimeMillis() - 60_000);
+        }
+        Files.writeString(streams.resolve("1761577200-c.mp4"), "another series");
+        Files.createDirectories(streams.resolve(".lecrec-uploads/b"));
+        Files.writeString(streams.resolve(".lecrec-uploads/b/job.json"), """
+                {"id": "job", "seriesID": "a", "files": ["%s"], "attempts": 0, "notBefore": 0}
+                """.formatted(streams.resolve("1761573600-a.mp4")));
+
+        List<String> uploaded = new CopyOnWriteArrayList<>();
+        UploadQueue queue = new UploadQueue(streams.toFile(), "a-node", new ResourceGovernor(0, 1, 1),
+                file -> uploaded.add(file.getName()));
+
+        queue.adopt("b", "a", Duration.ofSeconds(10));
+
+        // Both jobs may finish in either order, so wait for the end state instead of counting changes.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((uploaded.size() < 2 || queue.pending("a") > 0) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of("1761573600-a.mp4", "1761577200-a.mp4"), uploaded.stream().sorted().toList());
+        assertFalse(streams.resolve(".lecrec-uploads/b/job.json").toFile().exists());
+        assertTrue(streams.resolve("1761577200-c.mp4").toFile().exists());
+        // Still changing or not finished, so possibly being recorded by a stalled b.
+        assertTrue(streams.resolve("1761580800-a.mp4").toFile().exists());
+        assertTrue(streams.resolve("1761584400-a.mp4").toFile().exists());
+    }
+
+    private static byte[] finishedMp4() {
+        return HexFormat.of().parseHex("00000010" + "66747970" + "69736f6d00000200" + "00000008" + "6d6f6f76");
+    }
+
+    @Test
+    void backsOffExponentiallyUpToAnHour() {
+        assertEquals(Duration.ofMinutes(1), UploadQueue.backoff(1));
+        assertEquals(Duration.ofMinutes(8), UploadQueue.backoff(4));
+        assertEquals(Duration.ofHours(1), UploadQueue.backoff(30));
+    }
+}
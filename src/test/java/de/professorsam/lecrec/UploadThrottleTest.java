@@ -0,0 +1,44 @@
+package de.professorsam.lecrec;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadThrottleTest {
+
+    private static long writeMillis(UploadThrottle throttle, int bytes) throws Exception {
+        RequestBody body = throttle.wrap(RequestBody.create(new byte[bytes]));
+        Buffer sink = new Buffer();
+        long started = System.nanoTime();
+        body.writeTo(sink);
+        assertEquals(bytes, sink.size());
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+
+    @Test
+    void limitsOnlyWhileRecording() throws Exception {
+        UploadThrottle throttle = new UploadThrottle(0, 2 * 1024 * 1024);
+
+        assertEquals(0, throttle.rate());
+        assertTrue(writeMillis(throttle, 1024 * 1024) < 200);
+
+        throttle.setRecording(true);
+        assertEquals(2 * 1024 * 1024, throttle.rate());
+        // 1 MB at 2 MB/s, minus the quarter second burst the bucket may start with
+        assertTrue(writeMillis(throttle, 1024 * 1024) >= 200);
+
+        throttle.setRecording(false);
+        assertEquals(0, throttle.toJson().getLong("limitBytesPerSecond"));
+    }
+
+    @Test
+    void recordingRateFallsBackToIdleRate() {
+        UploadThrottle throttle = new UploadThrottle(1000, 0);
+        throttle.setRecording(true);
+
+        assertEquals(1000, throttle.rate());
+        assertEquals(1000, throttle.toJson().getLong("recordingLimitBytesPerSecond"));
+    }
+}